@@ -0,0 +1,70 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the conversion of each kind of adversarial document at several sizes. The "megabytes"
+ * counter should stay about the same across the sizes of a kind; if it drops as the size grows, the
+ * conversion isn't linear in it.
+ *
+ * The same documents are also converted under a typical set of limits, which cut the hostile ones short,
+ * to measure the cost of checking them. DEEP_NESTING is left out: without a limit on the depth, its
+ * XHTML grows with the square of its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdversarialBenchmark {
+	@Param({ "UNTERMINATED_ATTRIBUTE", "UNCLOSED_HEAD", "MANY_ATTRIBUTES", "NESTING_WAVES", "LIST_LOOKALIKES",
+		"ENTITY_LOOKALIKES", "STRAY_BRACKETS", "BODY_LOOKALIKES" })
+	public AdversarialGenerator.Kind kind;
+
+	@Param({ "262144", "1048576", "4194304" })
+	public int size;
+
+	private String html;
+	private double megabytes;
+	private final ConversionLimits limits = new ConversionLimits();
+
+	@Setup
+	public void setUp() {
+		html = AdversarialGenerator.generate(kind, size);
+		megabytes = html.getBytes(StandardCharsets.UTF_8).length / 1_000_000.0;
+		limits.set("tags=100k,depth=256,tag-length=64k");
+		limits.setTruncating(true);
+	}
+
+	@Benchmark
+	public void convert(ConversionBenchmark.Throughput throughput) throws IOException {
+		HtmlToXhtml.convert(new StringReader(html), Writer.nullWriter());
+		throughput.megabytes += megabytes;
+	}
+
+	@Benchmark
+	public void convertLimited(ConversionBenchmark.Throughput throughput) throws IOException {
+		XhtmlConverter converter = new XhtmlConverter(Writer.nullWriter());
+		converter.setLimits(limits);
+		converter.feed(html.toCharArray());
+		converter.finish();
+		throughput.megabytes += megabytes;
+	}
+}
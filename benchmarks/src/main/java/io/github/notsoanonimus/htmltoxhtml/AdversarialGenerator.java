@@ -0,0 +1,251 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates hostile HTML documents of any size: the inputs that would make a converter backtrack, rescan,
+ * or hold on to everything, if it did. Converting any of them should take time linear in its size, which
+ * LinearityTest checks and AdversarialBenchmark measures; the ones that can't be, like DEEP_NESTING, are what
+ * ConversionLimits are for. Every document is built from a fixed seed.
+ *
+ * Run it on its own to write the documents out to a directory, e.g. to try limits on them, one file per kind:
+ *     java -cp benchmarks.jar io.github.notsoanonimus.htmltoxhtml.AdversarialGenerator [directory] [size]
+ */
+public class AdversarialGenerator {
+	/**
+	 * The kinds of hostile documents.
+	 */
+	public enum Kind {
+		// An attribute value that's missing its closing quote, and the '>' of its tag, so the tag never ends.
+		UNTERMINATED_ATTRIBUTE,
+		// A HEAD that's never closed, full of self-closing tags without a '>', with a run of whitespace as
+		//   long as all of them that doesn't end in a '<': what the old regular expressions of the HEAD
+		//   backtracked on.
+		UNCLOSED_HEAD,
+		// A single tag with as many attributes as fit, many of them repeated.
+		MANY_ATTRIBUTES,
+		// Lists that are nested hundreds of levels deep, closed, and opened again.
+		NESTING_WAVES,
+		// Elements nested as deep as the size allows, and never closed. The pretty-printed XHTML of them
+		//   grows with the square of their depth, unless the depth is limited.
+		DEEP_NESTING,
+		// Almost-empty lists: each one is held back, and turns out not to be empty at the very end.
+		LIST_LOOKALIKES,
+		// Long runs of letters and digits after a '&', which are almost, but not quite, references.
+		ENTITY_LOOKALIKES,
+		// Stray '<' characters, alone, in runs, and followed by whitespace or a '/'.
+		STRAY_BRACKETS,
+		// Almost-closing BODY tags, which are held back until they turn out not to be one.
+		BODY_LOOKALIKES
+	}
+
+	private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+	private final Random random;
+	private final StringBuilder html = new StringBuilder();
+
+	private AdversarialGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Generate a document of the given kind, of about the given number of characters.
+	 */
+	public static String generate(Kind kind, int size) {
+		AdversarialGenerator generator = new AdversarialGenerator(kind.ordinal() * 37L + 11);
+		switch(kind) {
+			case UNTERMINATED_ATTRIBUTE:
+				return generator.unterminatedAttribute(size);
+			case UNCLOSED_HEAD:
+				return generator.unclosedHead(size);
+			case MANY_ATTRIBUTES:
+				return generator.manyAttributes(size);
+			case NESTING_WAVES:
+				return generator.nestingWaves(size, 400);
+			case DEEP_NESTING:
+				return generator.deepNesting(size);
+			case LIST_LOOKALIKES:
+				return generator.listLookalikes(size);
+			case ENTITY_LOOKALIKES:
+				return generator.entityLookalikes(size);
+			case STRAY_BRACKETS:
+				return generator.strayBrackets(size);
+			case BODY_LOOKALIKES:
+				return generator.bodyLookalikes(size);
+			default:
+				throw new IllegalArgumentException("Unknown adversarial kind: " + kind);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Paths.get(args.length > 0 ? args[0] : "adversarial");
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 1024 * 1024;
+		Files.createDirectories(directory);
+		for(Kind kind : Kind.values()) {
+			Path file = directory.resolve(kind.name().toLowerCase() + ".html");
+			Files.write(file, generate(kind, size).getBytes(StandardCharsets.UTF_8));
+			System.out.println("Wrote " + file + " (" + Files.size(file) + " bytes)");
+		}
+	}
+
+	private String unterminatedAttribute(int size) {
+		beginDocument();
+		html.append("<p>Before the link.</p>\n<a title='never closed' href=\"https://example.com/?q=");
+		while(html.length() < size) {
+			html.append(word()).append(random.nextBoolean() ? "&amp;" : " = ");
+		}
+		return html.toString();
+	}
+
+	private String unclosedHead(int size) {
+		html.append("<!DOCTYPE html>\n<html>\n<head>\n");
+		while(html.length() < size / 2) {
+			if(random.nextBoolean()) {
+				html.append("<meta name=").append(word()).append(' ');
+			} else {
+				html.append("<LINK rel=").append(word()).append("  /");
+			}
+		}
+		html.append(" \t".repeat((size - html.length()) / 2)).append(word());
+		return html.toString();
+	}
+
+	private String manyAttributes(int size) {
+		beginDocument();
+		html.append("<div");
+		for(int i = 0; html.length() < size; i++) {
+			// About half of them repeat an earlier one.
+			html.append(" data-").append(random.nextInt(i + 1)).append("=\"").append(word()).append('"');
+		}
+		html.append(" bgcolor=red style=\"color: blue\">").append(word()).append("</div>\n");
+		endDocument();
+		return html.toString();
+	}
+
+	private String nestingWaves(int size, int depth) {
+		beginDocument();
+		while(html.length() < size) {
+			html.append("<section>");
+			for(int level = 0; level < depth; level++) {
+				html.append(random.nextBoolean() ? "<ul>" : "<div>").append(word());
+			}
+			// Close the whole wave with its outermost tag, which cascades through all of it.
+			html.append("</section>\n");
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private String deepNesting(int size) {
+		beginDocument();
+		while(html.length() < size) {
+			html.append(random.nextBoolean() ? "<div>" : "<ul>").append(word()).append('\n');
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private String listLookalikes(int size) {
+		beginDocument();
+		while(html.length() < size) {
+			switch(random.nextInt(4)) {
+				case 0:
+					html.append("<ul class=").append(word()).append(">   \n\t  </ul class=x</ol>");
+					break;
+				case 1:
+					html.append("< ol>").append(" ".repeat(random.nextInt(64))).append("< /o").append(word());
+					break;
+				case 2:
+					html.append("<dl").append(" ".repeat(random.nextInt(64))).append("<dl><dl></d");
+					break;
+				default:
+					html.append("<ul>\n  <ul>\n    <ul></ul>\n  </ul>x");
+					break;
+			}
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private String entityLookalikes(int size) {
+		beginDocument();
+		html.append("<p>");
+		while(html.length() < size) {
+			switch(random.nextInt(4)) {
+				case 0:
+					html.append('&').append(letters(32 + random.nextInt(256))).append(' ');
+					break;
+				case 1:
+					html.append("&#").append("9".repeat(16 + random.nextInt(64))).append(' ');
+					break;
+				case 2:
+					html.append("&#x").append("f".repeat(16 + random.nextInt(64))).append(';');
+					break;
+				default:
+					// Prefixes of real references, like &notin; and &copy;.
+					html.append("&noti&cop&amp&nbspx&").append(letters(3));
+					break;
+			}
+		}
+		html.append("</p>\n");
+		endDocument();
+		return html.toString();
+	}
+
+	private String strayBrackets(int size) {
+		beginDocument();
+		while(html.length() < size) {
+			switch(random.nextInt(4)) {
+				case 0:
+					html.append("<".repeat(1 + random.nextInt(64)));
+					break;
+				case 1:
+					html.append("< ").append(word()).append(" <\t/ ");
+					break;
+				case 2:
+					html.append("<3 ").append(word()).append(" 1 < 2 && 2 > 1 ");
+					break;
+				default:
+					html.append("<b>").append(word()).append("</b> ");
+					break;
+			}
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private String bodyLookalikes(int size) {
+		beginDocument();
+		while(html.length() < size) {
+			html.append("</b</bo</bod</BODY").append(random.nextBoolean() ? " " : "x").append(word())
+				.append("<body><bod></bodx>");
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private void beginDocument() {
+		html.append("<!DOCTYPE html>\n<html>\n<head>\n<title>Adversarial</title>\n</head>\n<body>\n");
+	}
+
+	private void endDocument() {
+		html.append("</body>\n</html>\n");
+	}
+
+	private String letters(int count) {
+		StringBuilder letters = new StringBuilder(count);
+		for(int i = 0; i < count; i++) {
+			letters.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+		}
+		return letters.toString();
+	}
+
+	private String word() {
+		return letters(2 + random.nextInt(8));
+	}
+}
@@ -0,0 +1,181 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the conversion of each kind of corpus document, both as a whole (pretty-printed only, with
+ * the minimized XHTML written alongside, and with a warm cache of sanitized tags) and one phase at a
+ * time: tag extraction (the tokenizer), tag sanitization (the tag rules), and nesting repair (the body
+ * writer, fed with tags that were already sanitized).
+ *
+ * Besides operations per second, every benchmark reports the "megabytes" counter: the megabytes of the
+ * raw HTML document processed per second, so the phases can be compared with each other and across
+ * document kinds. Run with '-prof gc' for the allocation rate of each of them as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+	@Param({ "SNIPPET", "MALFORMED", "TABLE", "NESTED_LISTS", "UNCLOSED_FLOOD" })
+	public CorpusGenerator.Kind corpus;
+
+	private String html;
+	private double megabytes;
+	private final TagRules rules = new TagRules();
+	private final TagRules cachedRules = new TagRules();
+
+	// The tags found by the tokenizer.
+	private final ArrayList<String> rawTags = new ArrayList<>();
+	// The BODY as the body writer sees it: text (Strings) and already-sanitized tags (NormalizedTags).
+	private final ArrayList<Object> bodyEvents = new ArrayList<>();
+
+	/**
+	 * Megabytes of raw HTML processed, reported per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Throughput {
+		public double megabytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megabytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		html = CorpusGenerator.generate(corpus);
+		megabytes = html.getBytes(StandardCharsets.UTF_8).length / 1_000_000.0;
+
+		// Record the phases' inputs by running the document through each of the earlier phases once.
+		HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlTokenizer.Handler() {
+			// The text since the previous tag, which is dropped along with an invalid tag.
+			private final StringBuilder text = new StringBuilder();
+
+			@Override
+			public void startBody() {
+			}
+
+			@Override
+			public void text(CharSequence content) {
+				text.append(content);
+			}
+
+			@Override
+			public void tag(String tag, long position) {
+				rawTags.add(tag);
+				NormalizedTag sanitized = rules.normalize(tag, new XhtmlTag());
+				if(sanitized != NormalizedTag.INVALID) {
+					bodyEvents.add(text.toString());
+					bodyEvents.add(sanitized);
+				}
+				text.setLength(0);
+			}
+
+			@Override
+			public void end() {
+				bodyEvents.add(text.toString());
+			}
+		});
+		tokenizer.write(html);
+		tokenizer.end();
+
+		// Warm up the cache with the document once.
+		cachedRules.setCacheSize(10_000);
+		HtmlToXhtml.convert(new StringReader(html), Writer.nullWriter(), cachedRules);
+	}
+
+	@Benchmark
+	public void convert(Throughput throughput) throws IOException {
+		HtmlToXhtml.convert(new StringReader(html), Writer.nullWriter());
+		throughput.megabytes += megabytes;
+	}
+
+	@Benchmark
+	public void convertMinimized(Throughput throughput) throws IOException {
+		HtmlToXhtml.convert(new StringReader(html), Writer.nullWriter(), Writer.nullWriter());
+		throughput.megabytes += megabytes;
+	}
+
+	@Benchmark
+	public void convertCached(Throughput throughput) throws IOException {
+		HtmlToXhtml.convert(new StringReader(html), Writer.nullWriter(), cachedRules);
+		throughput.megabytes += megabytes;
+	}
+
+	@Benchmark
+	public void extractTags(Throughput throughput, Blackhole blackhole) throws IOException {
+		HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlTokenizer.Handler() {
+			@Override
+			public void startBody() {
+			}
+
+			@Override
+			public void text(CharSequence text) {
+				blackhole.consume(text);
+			}
+
+			@Override
+			public void tag(String tag, long position) {
+				blackhole.consume(tag);
+			}
+
+			@Override
+			public void end() {
+			}
+		});
+		tokenizer.write(html);
+		tokenizer.end();
+		throughput.megabytes += megabytes;
+	}
+
+	@Benchmark
+	public void sanitizeTags(Throughput throughput, Blackhole blackhole) {
+		XhtmlTag sanitized = new XhtmlTag();
+		for(int i = 0; i < rawTags.size(); i++) {
+			blackhole.consume(rules.normalize(rawTags.get(i), sanitized));
+		}
+		throughput.megabytes += megabytes;
+	}
+
+	@Benchmark
+	public void repairNesting(Throughput throughput) throws IOException {
+		DocumentMetrics metrics = new DocumentMetrics(false);
+		XhtmlBodyWriter bodyWriter = new XhtmlBodyWriter(new XhtmlEmitter(Writer.nullWriter(), null, metrics), rules, Trace.OFF, metrics);
+		bodyWriter.startBody();
+		for(int i = 0; i < bodyEvents.size(); i++) {
+			Object event = bodyEvents.get(i);
+			if(event instanceof NormalizedTag) {
+				bodyWriter.repairTag((NormalizedTag)event, i);
+			} else {
+				bodyWriter.text((String)event);
+			}
+		}
+		bodyWriter.end();
+		throughput.megabytes += megabytes;
+	}
+}
@@ -0,0 +1,231 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates the HTML documents the benchmarks run on. Every document is built from a fixed seed, so the
+ * corpus is the same on every run and every machine without having to check megabytes of HTML in.
+ *
+ * Run it on its own to write the corpus out to a directory for a look, one file per kind:
+ *     java -cp benchmarks.jar io.github.notsoanonimus.htmltoxhtml.CorpusGenerator [directory]
+ */
+public class CorpusGenerator {
+	/**
+	 * The kinds of documents in the corpus.
+	 */
+	public enum Kind {
+		// A tiny, well-formed page: measures the fixed cost of a conversion.
+		SNIPPET,
+		// Pages in the style of docs/bad_html_test.html: orphaned and empty lists, badly-nested inline
+		//   tags, upper-case tags, unquoted and minimized attributes, bgcolor, and entities.
+		MALFORMED,
+		// One large table with attributes on every row and cell, like a generated report.
+		TABLE,
+		// Deeply nested lists, with content that isn't wrapped in LI elements at every level.
+		NESTED_LISTS,
+		// Opening tags that are never closed, so the stack of open elements just keeps growing.
+		UNCLOSED_FLOOD
+	}
+
+	private static final String[] WORDS = {
+		"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+		"eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "&amp;",
+		"&reg;", "&copy;", "&nbsp;", "Volunteer", "Portal", "Incident", "Report"
+	};
+	private static final String[] INLINE_TAGS = { "b", "i", "u", "em", "strong", "span", "font", "a" };
+	private static final String[] COLORS = { "red", "#234", "#135C39", "rgb(255, 255, 255)", "navy" };
+
+	private final Random random;
+	private final StringBuilder html = new StringBuilder();
+
+	private CorpusGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Generate the document of the given kind.
+	 */
+	public static String generate(Kind kind) {
+		CorpusGenerator generator = new CorpusGenerator(kind.ordinal() * 31L + 7);
+		switch(kind) {
+			case SNIPPET:
+				return generator.snippet();
+			case MALFORMED:
+				return generator.malformed(64 * 1024);
+			case TABLE:
+				return generator.table(1024 * 1024);
+			case NESTED_LISTS:
+				return generator.nestedLists(256 * 1024, 48);
+			case UNCLOSED_FLOOD:
+				return generator.unclosedFlood(2000);
+			default:
+				throw new IllegalArgumentException("Unknown corpus kind: " + kind);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Paths.get(args.length > 0 ? args[0] : "corpus");
+		Files.createDirectories(directory);
+		for(Kind kind : Kind.values()) {
+			Path file = directory.resolve(kind.name().toLowerCase() + ".html");
+			Files.write(file, generate(kind).getBytes(StandardCharsets.UTF_8));
+			System.out.println("Wrote " + file + " (" + Files.size(file) + " bytes)");
+		}
+	}
+
+	private String snippet() {
+		beginDocument("Snippet");
+		html.append("<p>Hello, <b>world</b>! See <a href=\"#more\">more</a>.</p>\n");
+		html.append("<ul><li>One</li><li>Two</li></ul>\n");
+		endDocument();
+		return html.toString();
+	}
+
+	private String malformed(int size) {
+		beginDocument("Malformed");
+		while(html.length() < size) {
+			switch(random.nextInt(6)) {
+				case 0:
+					// Orphaned LI, with content that isn't wrapped in the nested list.
+					html.append("<h1>Orphaned LI Tag:</h1>\n<li>").append(words(3))
+						.append("\n    <ul><li>").append(words(2)).append("</li>").append(words(1).toUpperCase())
+						.append("<li>").append(words(2)).append("</li></ul>\n</li>\n");
+					break;
+				case 1:
+					// Upper-case tags, bgcolor, and an OL without LI children.
+					html.append("<H1 bgcolor=\"").append(color()).append("\">").append(words(4)).append("</h1>\n<OL>\n    <b>")
+						.append(words(2)).append("</b>\n    ").append(words(3)).append("\n    <li><u>").append(words(2))
+						.append("</u></li>\n</ol>\n");
+					break;
+				case 2:
+					// Badly-nested inline tags, unquoted and minimized attributes.
+					html.append("<p><u><i>").append(words(5)).append("</u></i></p>\n<DIV checked class=").append(word())
+						.append(">\n    ").append(words(3)).append(" <i><span>").append(words(2)).append("</i></div></span>\n");
+					break;
+				case 3:
+					// Style merging and an empty list.
+					html.append("<h2 style=\"font-size:").append(10 + random.nextInt(20)).append("px;\" bgcolor=\"")
+						.append(color()).append("\">").append(words(4)).append("</h2>\n<p>9.&nbsp;&nbsp;")
+						.append(words(12)).append("</p>\n<ol style=\"padding: 0px 40px; font-family: Arial, Verdana, &quot;Trebuchet MS&quot;;\">\n</ol>\n");
+					break;
+				case 4:
+					// A list inside a paragraph, with unwrapped content between the items.
+					html.append("<P>\n<li>\n    <ul>\n        ").append(words(2)).append("\n        <li>").append(words(3))
+						.append("</li>\n        ").append(words(2)).append("\n    </ul>\n</li>\n</P>\n");
+					break;
+				default:
+					// Line breaks, images, and inline formatting soup.
+					html.append("<p>").append(words(6)).append("<BR>").append(inline(3)).append("<img src=")
+						.append(word()).append(".png alt='").append(words(2)).append("'>").append(words(4)).append("</p>\n");
+					break;
+			}
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private String table(int size) {
+		beginDocument("Table");
+		html.append("<table border=1 cellpadding=\"2\" width=100%>\n<tr>");
+		for(int column = 0; column < 8; column++) {
+			html.append("<th align=left>").append(word()).append("</th>");
+		}
+		html.append("</tr>\n");
+		while(html.length() < size) {
+			html.append("<tr bgcolor=\"").append(color()).append("\">");
+			for(int column = 0; column < 8; column++) {
+				html.append("<td valign=top nowrap>");
+				if(random.nextInt(4) == 0) {
+					html.append(inline(2));
+				} else {
+					html.append(random.nextInt(100000));
+				}
+				// Plenty of generated reports forget to close their cells.
+				if(random.nextInt(10) != 0) {
+					html.append("</td>");
+				}
+			}
+			html.append("</tr>\n");
+		}
+		html.append("</table>\n");
+		endDocument();
+		return html.toString();
+	}
+
+	private String nestedLists(int size, int depth) {
+		beginDocument("Nested lists");
+		while(html.length() < size) {
+			for(int level = 0; level < depth; level++) {
+				html.append(random.nextBoolean() ? "<ul>" : "<ol type=\"a\">");
+				// Every few levels, content that's directly inside of the list.
+				if(level % 3 == 0) {
+					html.append(words(2));
+				}
+				html.append("<li>").append(words(3));
+			}
+			// Every level is closed as a UL, whichever type it was opened as.
+			for(int level = depth - 1; level >= 0; level--) {
+				html.append("</li></ul>\n");
+			}
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private String unclosedFlood(int count) {
+		beginDocument("Unclosed flood");
+		for(int i = 0; i < count; i++) {
+			html.append('<').append(random.nextBoolean() ? "div" : INLINE_TAGS[random.nextInt(INLINE_TAGS.length)])
+				.append(" class=\"c").append(i).append("\">").append(words(2)).append('\n');
+			// The odd closing tag for something far down the stack.
+			if(random.nextInt(50) == 0) {
+				html.append("</div>");
+			}
+		}
+		endDocument();
+		return html.toString();
+	}
+
+	private void beginDocument(String title) {
+		html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>").append(title)
+			.append("</title>\n</head>\n<body>\n");
+	}
+
+	private void endDocument() {
+		html.append("</BODY>\n</html>\n");
+	}
+
+	private String inline(int count) {
+		StringBuilder content = new StringBuilder();
+		for(int i = 0; i < count; i++) {
+			String tag = INLINE_TAGS[random.nextInt(INLINE_TAGS.length)];
+			content.append('<').append(tag).append(tag.equals("font") ? " color=" + color() : "").append('>')
+				.append(words(2)).append("</").append(tag).append('>');
+		}
+		return content.toString();
+	}
+
+	private String words(int count) {
+		StringBuilder content = new StringBuilder();
+		for(int i = 0; i < count; i++) {
+			if(i > 0) {
+				content.append(' ');
+			}
+			content.append(word());
+		}
+		return content.toString();
+	}
+
+	private String word() {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	private String color() {
+		return COLORS[random.nextInt(COLORS.length)];
+	}
+}
@@ -0,0 +1,79 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Checks that every kind of adversarial document converts in time linear in its size: each one is
+ * converted at four sizes, doubling from the smallest, and the time per character at the largest may
+ * only be so many times what it is at the smallest. Quadratic behavior makes it about eight times as
+ * much; noise, the garbage collector, and the caches make up the rest of the allowance.
+ *
+ * The XHTML is written to null Writers, which take the indentation of a line in constant time, so what's
+ * measured is the conversion itself, even where its output grows with the square of the nesting.
+ */
+class LinearityTest {
+	private static final int SMALLEST_SIZE = 64 * 1024;
+	private static final int SIZES = 4;
+	private static final double ALLOWED_RATIO = 3.0;
+	// Each size is converted this many times, and the fastest time counts.
+	private static final int RUNS = 6;
+
+	@ParameterizedTest
+	@EnumSource(AdversarialGenerator.Kind.class)
+	void linearInSize(AdversarialGenerator.Kind kind) throws IOException {
+		assertLinear(kind, null);
+	}
+
+	@Test
+	void deepNestingUnderDepthLimit() throws IOException {
+		ConversionLimits limits = new ConversionLimits();
+		limits.setMaximumDepth(256);
+		limits.setTruncating(true);
+		assertLinear(AdversarialGenerator.Kind.DEEP_NESTING, limits);
+	}
+
+	private static void assertLinear(AdversarialGenerator.Kind kind, ConversionLimits limits) throws IOException {
+		String[] documents = new String[SIZES];
+		long[] best = new long[SIZES];
+		for(int i = 0; i < SIZES; i++) {
+			documents[i] = AdversarialGenerator.generate(kind, SMALLEST_SIZE << i);
+			best[i] = Long.MAX_VALUE;
+		}
+		// Go through all the sizes in every run, so that the JIT compiling the converter in the first ones
+		//   slows all of the sizes down, and none of them counts.
+		for(int run = 0; run < RUNS; run++) {
+			for(int i = 0; i < SIZES; i++) {
+				best[i] = Math.min(best[i], convert(documents[i], limits));
+			}
+		}
+		StringBuilder times = new StringBuilder();
+		double[] nanosPerChar = new double[SIZES];
+		for(int i = 0; i < SIZES; i++) {
+			nanosPerChar[i] = (double) best[i] / documents[i].length();
+			times.append(String.format(Locale.ROOT, " %.1f ns/char at %,d;", nanosPerChar[i], documents[i].length()));
+		}
+		assertTrue(nanosPerChar[SIZES - 1] / nanosPerChar[0] <= ALLOWED_RATIO, kind + " isn't linear:" + times);
+	}
+
+	// Convert a document to both outputs, returning how long it took, in nanoseconds.
+	private static long convert(String html, ConversionLimits limits) throws IOException {
+		long start = System.nanoTime();
+		XhtmlConverter converter = new XhtmlConverter(Writer.nullWriter(), Writer.nullWriter(),
+			StandardCharsets.UTF_8, XhtmlConverter.DEFAULT_RULES, Trace.OFF);
+		if(limits != null) {
+			converter.setLimits(limits);
+		}
+		converter.feed(html.toCharArray());
+		converter.finish();
+		return System.nanoTime() - start;
+	}
+}
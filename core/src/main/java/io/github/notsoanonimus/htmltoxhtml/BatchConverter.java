@@ -0,0 +1,390 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Converts whole batches of HTML files to XHTML files, in parallel on a work-stealing pool.
+ *
+ * Inputs are single files, directories (searched recursively for .html and .htm files), or glob
+ * patterns like "archive/**&#47;*.html". Each file gets an .xhtml file with the same name, and with
+ * the minimized option also a .min.xhtml file. They're written next to the input file, or into an
+ * output directory that mirrors the layout of the inputs.
+ *
+ * The files are found lazily and only a few of them are queued up per thread at any time, so batches
+ * of any size take the same memory. A file that fails to convert is recorded in the summary, and
+ * doesn't stop the rest of the batch; its outputs aren't written, and any earlier ones are kept.
+ */
+public class BatchConverter {
+	// The file extensions picked up when searching a directory.
+	private static final String[] HTML_EXTENSIONS = { ".html", ".htm" };
+	// How many files can be waiting for each thread of the pool.
+	private static final int QUEUED_FILES_PER_THREAD = 4;
+	// How many of the failures are listed in the summary.
+	private static final int LISTED_FAILURES = 20;
+
+	private final TagRules rules;
+	private final Trace trace;
+	private final Path outputDirectory;
+	private final boolean writeMinimized;
+	private final int parallelism;
+
+	// Statistics of the batch that's running.
+	private final LongAdder convertedFiles = new LongAdder();
+	private final LongAdder failedFiles = new LongAdder();
+	private final LongAdder inputBytes = new LongAdder();
+	private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+	// The totals of the converted files' metrics, and whether their phases are timed.
+	private final ConversionMetrics metrics = new ConversionMetrics();
+	private volatile boolean phaseTimings = false;
+	// The limits every file is held to, if any.
+	private volatile ConversionLimits limits;
+
+	/**
+	 * Create a batch converter.
+	 *
+	 * @param rules The rules to correct every tag with.
+	 * @param trace Where to trace what happens to every tag, naming the file in every event.
+	 * @param outputDirectory Where to write the XHTML files, or null to write them next to the inputs.
+	 * @param writeMinimized Whether to also write a minimized .min.xhtml file for each input.
+	 * @param parallelism How many files to convert at once, e.g. the number of available processors.
+	 */
+	public BatchConverter(TagRules rules, Trace trace, Path outputDirectory, boolean writeMinimized, int parallelism) {
+		if(parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1, not " + parallelism + ".");
+		}
+		this.rules = rules;
+		this.trace = trace;
+		this.outputDirectory = outputDirectory;
+		this.writeMinimized = writeMinimized;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Turn the timing of each phase of every conversion on or off; see XhtmlConverter.setPhaseTimings().
+	 */
+	public void setPhaseTimings(boolean enabled) {
+		phaseTimings = enabled;
+	}
+
+	/**
+	 * Hold every file to the given limits, or to none if they're null; see XhtmlConverter.setLimits(). A
+	 * file that reaches one fails like any other, unless the limits truncate it.
+	 */
+	public void setLimits(ConversionLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * The totals of the metrics of every file of the batch converted so far. This can be polled from
+	 * another thread while the batch is running, to watch its progress.
+	 */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Convert every file matched by the given inputs, waiting until they're all done. The summary of the
+	 * batch is returned; it lists the files that failed, if any.
+	 */
+	public Summary convert(List<String> inputs) throws InterruptedException {
+		convertedFiles.reset();
+		failedFiles.reset();
+		inputBytes.reset();
+		failures.clear();
+		metrics.reset();
+		long start = System.nanoTime();
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		Semaphore queuedFiles = new Semaphore(parallelism * QUEUED_FILES_PER_THREAD);
+		try {
+			for(String input : inputs) {
+				try(Stream<Path> files = findFiles(input)) {
+					// The root of the input, which the output directory mirrors.
+					Path root = inputRoot(input);
+					for(Path file : (Iterable<Path>)files::iterator) {
+						queuedFiles.acquire();
+						pool.execute(() -> {
+							try {
+								convertFile(file, root);
+							} finally {
+								queuedFiles.release();
+							}
+						});
+					}
+				} catch(IOException | RuntimeException e) {
+					fail(input, e);
+				}
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		return new Summary(convertedFiles.sum(), failedFiles.sum(), inputBytes.sum(),
+			System.nanoTime() - start, new ArrayList<>(failures), metrics.snapshot());
+	}
+
+	// Convert a single file, writing its output(s) to the mirrored location under the output directory.
+	//   They're written to temporary files first, and only moved into place once the whole file has been
+	//   converted, so that a file that fails leaves nothing behind, and an earlier output stays as it was.
+	private void convertFile(Path file, Path root) {
+		Path xhtmlTemporary = null;
+		Path minimizedTemporary = null;
+		try {
+			Path xhtmlFile = outputFile(file, root, ".xhtml");
+			Path minimizedFile = writeMinimized ? outputFile(file, root, ".min.xhtml") : null;
+			// A glob pattern can match earlier outputs, which must not be converted onto themselves.
+			if(isSameFile(file, xhtmlFile) || (minimizedFile != null && isSameFile(file, minimizedFile))) {
+				throw new IOException("The output would overwrite the input.");
+			}
+			if(xhtmlFile.getParent() != null) {
+				Files.createDirectories(xhtmlFile.getParent());
+			}
+			xhtmlTemporary = temporaryFile(xhtmlFile);
+			minimizedTemporary = minimizedFile != null ? temporaryFile(minimizedFile) : null;
+			DocumentMetrics documentMetrics = new DocumentMetrics(phaseTimings);
+			try(HtmlInput in = new HtmlInput(file);
+					Writer xhtml = newWriter(xhtmlTemporary);
+					Writer minimized = minimizedTemporary != null ? newWriter(minimizedTemporary) : null) {
+				// Raw bytes go straight to the converter, in the charset sniffed from the file, and it replaces
+				//   malformed input instead of failing. Both outputs are written in the same pass.
+				XhtmlConverter converter = new XhtmlConverter(xhtml, minimized, in.getCharset(), rules,
+					trace.forDocument(file.toString()), documentMetrics);
+				converter.setDocument(file.toString());
+				converter.setParallelPool(in.getSize());
+				ConversionLimits limits = this.limits;
+				if(limits != null) {
+					converter.setLimits(limits);
+				}
+				try {
+					in.feed(converter);
+				} finally {
+					inputBytes.add(documentMetrics.get(ConversionMetrics.Counter.INPUT_BYTES));
+				}
+				converter.finish();
+			}
+			moveIntoPlace(xhtmlTemporary, xhtmlFile);
+			xhtmlTemporary = null;
+			if(minimizedTemporary != null) {
+				moveIntoPlace(minimizedTemporary, minimizedFile);
+				minimizedTemporary = null;
+			}
+			metrics.add(documentMetrics.snapshot());
+			convertedFiles.increment();
+		} catch(IOException | RuntimeException e) {
+			fail(file.toString(), e);
+		} finally {
+			deleteTemporaryFile(xhtmlTemporary);
+			deleteTemporaryFile(minimizedTemporary);
+		}
+	}
+
+	// A name for a temporary file next to the given output, which no other file has. It's hidden, and has
+	//   none of the extensions a directory is searched for.
+	private static Path temporaryFile(Path output) {
+		return output.resolveSibling("." + output.getFileName() + "."
+			+ Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+	}
+
+	// A new file, which fails rather than overwrite one that exists already.
+	private static Writer newWriter(Path file) throws IOException {
+		return Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+
+	// Replace the output with the finished temporary file, in one step where the file system can do that.
+	private static void moveIntoPlace(Path temporary, Path output) throws IOException {
+		try {
+			Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void deleteTemporaryFile(Path temporary) {
+		if(temporary == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(temporary);
+		} catch(IOException e) {
+			// The conversion failed already; a temporary file left behind is hidden, and skipped by directory searches.
+		}
+	}
+
+	private void fail(String input, Exception e) {
+		failedFiles.increment();
+		if(failures.size() < LISTED_FAILURES) {
+			failures.add(input + ": " + e);
+		}
+	}
+
+	// The files matched by a single input: a file, a directory, or a glob pattern.
+	static Stream<Path> findFiles(String input) throws IOException {
+		if(isGlob(input)) {
+			Path root = inputRoot(input);
+			String pattern = input.substring(globStart(input));
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+			return Files.walk(root)
+				.filter(Files::isRegularFile)
+				.filter(file -> matcher.matches(root.relativize(file)));
+		}
+		Path path = Paths.get(input);
+		if(Files.isDirectory(path)) {
+			return Files.walk(path)
+				.filter(Files::isRegularFile)
+				.filter(BatchConverter::isHtmlFile);
+		}
+		if(!Files.isRegularFile(path)) {
+			throw new IOException("No such file or directory.");
+		}
+		return Stream.of(path);
+	}
+
+	// The directory an input's files are relative to, i.e. the part of a glob pattern before any wildcard.
+	private static Path inputRoot(String input) {
+		if(isGlob(input)) {
+			String root = input.substring(0, globStart(input));
+			return Paths.get(root.isEmpty() ? "." : root);
+		}
+		Path path = Paths.get(input);
+		if(Files.isDirectory(path)) {
+			return path;
+		}
+		Path parent = path.toAbsolutePath().getParent();
+		return parent != null ? parent : path.toAbsolutePath();
+	}
+
+	// Where the output with the given extension goes for the given input file.
+	private Path outputFile(Path file, Path root, String extension) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		String outputName = (dot > 0 ? name.substring(0, dot) : name) + extension;
+		if(outputDirectory == null) {
+			return file.resolveSibling(outputName);
+		}
+		Path relative = root.toAbsolutePath().normalize().relativize(file.toAbsolutePath().normalize());
+		return outputDirectory.resolve(relative).resolveSibling(outputName);
+	}
+
+	/**
+	 * Whether the given input is a glob pattern rather than the name of a file or directory.
+	 */
+	static boolean isGlob(String input) {
+		return globStart(input) < input.length();
+	}
+
+	// The index of the path segment holding the first wildcard of a glob pattern, or the length of the input.
+	private static int globStart(String input) {
+		int wildcard = 0;
+		while(wildcard < input.length() && "*?[{".indexOf(input.charAt(wildcard)) < 0) {
+			wildcard++;
+		}
+		if(wildcard == input.length()) {
+			return wildcard;
+		}
+		return Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf(File.separatorChar, wildcard)) + 1;
+	}
+
+	private static boolean isSameFile(Path file, Path other) {
+		return file.toAbsolutePath().normalize().equals(other.toAbsolutePath().normalize());
+	}
+
+	private static boolean isHtmlFile(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+		for(String extension : HTML_EXTENSIONS) {
+			if(name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * What happened in a batch.
+	 */
+	public static class Summary {
+		private final long convertedFiles;
+		private final long failedFiles;
+		private final long inputBytes;
+		private final long elapsedNanos;
+		private final List<String> failures;
+		private final ConversionMetrics.Snapshot metrics;
+
+		Summary(long convertedFiles, long failedFiles, long inputBytes, long elapsedNanos, List<String> failures,
+				ConversionMetrics.Snapshot metrics) {
+			this.convertedFiles = convertedFiles;
+			this.failedFiles = failedFiles;
+			this.inputBytes = inputBytes;
+			this.elapsedNanos = elapsedNanos;
+			this.failures = failures;
+			this.metrics = metrics;
+		}
+
+		public long getConvertedFiles() {
+			return convertedFiles;
+		}
+
+		public long getFailedFiles() {
+			return failedFiles;
+		}
+
+		public long getInputBytes() {
+			return inputBytes;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * The first few failures, each as the file name and what went wrong with it.
+		 */
+		public List<String> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * The totals of the metrics of the converted files.
+		 */
+		public ConversionMetrics.Snapshot getMetrics() {
+			return metrics;
+		}
+
+		@Override
+		public String toString() {
+			double seconds = elapsedNanos / 1e9;
+			double megabytes = inputBytes / 1e6;
+			StringBuilder summary = new StringBuilder();
+			summary.append(String.format(Locale.ROOT, "Converted %d file(s), %.1f MB of HTML, in %.2f s (%.1f files/s, %.2f MB/s).",
+				convertedFiles, megabytes, seconds, convertedFiles / seconds, megabytes / seconds));
+			if(failedFiles > 0) {
+				summary.append(String.format(Locale.ROOT, "%n%d file(s) failed", failedFiles));
+				summary.append(failedFiles > failures.size() ? ", the first " + failures.size() + " of them:" : ":");
+				for(String failure : failures) {
+					summary.append(System.lineSeparator()).append("    ").append(failure);
+				}
+			}
+			return summary.toString();
+		}
+	}
+}
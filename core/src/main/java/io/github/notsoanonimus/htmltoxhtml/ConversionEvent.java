@@ -0,0 +1,122 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for the conversion of one document, from the creation of its converter until
+ * it's finished, with the document's metrics. When the event is enabled in a recording, the converter
+ * times its phases as well. Set a threshold on the event to catch just the pathological documents.
+ */
+@Name("io.github.notsoanonimus.htmltoxhtml.Conversion")
+@Label("XHTML Conversion")
+@Category("HTML to XHTML")
+@Description("The conversion of one HTML document to XHTML")
+@StackTrace(false)
+class ConversionEvent extends Event {
+	@Label("Document")
+	String document;
+
+	@Label("Truncated")
+	@Description("Whether the document was cut short at one of the limits of its converter")
+	boolean truncated;
+
+	@Label("Input Bytes")
+	@DataAmount(DataAmount.BYTES)
+	long inputBytes;
+
+	@Label("Input Characters")
+	long inputChars;
+
+	@Label("Output Bytes")
+	@DataAmount(DataAmount.BYTES)
+	long outputBytes;
+
+	@Label("Minimized Bytes")
+	@DataAmount(DataAmount.BYTES)
+	long minimizedBytes;
+
+	@Label("Head")
+	@Timespan(Timespan.NANOSECONDS)
+	long headTime;
+
+	@Label("Tag Extraction")
+	@Timespan(Timespan.NANOSECONDS)
+	long tagExtractionTime;
+
+	@Label("Sanitization")
+	@Timespan(Timespan.NANOSECONDS)
+	long sanitizationTime;
+
+	@Label("Nesting Repair")
+	@Timespan(Timespan.NANOSECONDS)
+	long nestingTime;
+
+	@Label("Minimization")
+	@Timespan(Timespan.NANOSECONDS)
+	long minimizationTime;
+
+	@Label("Tags")
+	long tags;
+
+	@Label("Dropped Tags")
+	long droppedTags;
+
+	@Label("Tag Cache Hits")
+	long tagCacheHits;
+
+	@Label("Tag Cache Misses")
+	long tagCacheMisses;
+
+	@Label("Inserted Lists")
+	long insertedLists;
+
+	@Label("Inserted List Items")
+	long insertedListItems;
+
+	@Label("Cascaded Closes")
+	long cascadedCloses;
+
+	@Label("Unclosed Elements")
+	long unclosedElements;
+
+	@Label("Dropped Closing Tags")
+	long droppedClosingTags;
+
+	@Label("Merged Styles")
+	long mergedStyles;
+
+	@Label("Self-closed Elements")
+	long selfClosedElements;
+
+	// Fill in the event from the metrics of the document.
+	void set(DocumentMetrics metrics) {
+		truncated = metrics.get(ConversionMetrics.Counter.TRUNCATED_DOCUMENTS) > 0;
+		inputBytes = metrics.get(ConversionMetrics.Counter.INPUT_BYTES);
+		inputChars = metrics.get(ConversionMetrics.Counter.INPUT_CHARS);
+		outputBytes = metrics.get(ConversionMetrics.Counter.OUTPUT_BYTES);
+		minimizedBytes = metrics.get(ConversionMetrics.Counter.MINIMIZED_BYTES);
+		headTime = metrics.getNanos(ConversionMetrics.Phase.HEAD);
+		tagExtractionTime = metrics.getNanos(ConversionMetrics.Phase.TAG_EXTRACTION);
+		sanitizationTime = metrics.getNanos(ConversionMetrics.Phase.SANITIZATION);
+		nestingTime = metrics.getNanos(ConversionMetrics.Phase.NESTING);
+		minimizationTime = metrics.getNanos(ConversionMetrics.Phase.MINIMIZATION);
+		tags = metrics.get(ConversionMetrics.Counter.TAGS);
+		droppedTags = metrics.get(ConversionMetrics.Counter.DROPPED_TAGS);
+		tagCacheHits = metrics.get(ConversionMetrics.Counter.TAG_CACHE_HITS);
+		tagCacheMisses = metrics.get(ConversionMetrics.Counter.TAG_CACHE_MISSES);
+		insertedLists = metrics.get(ConversionMetrics.Counter.INSERTED_LISTS);
+		insertedListItems = metrics.get(ConversionMetrics.Counter.INSERTED_LIST_ITEMS);
+		cascadedCloses = metrics.get(ConversionMetrics.Counter.CASCADED_CLOSES);
+		unclosedElements = metrics.get(ConversionMetrics.Counter.UNCLOSED_ELEMENTS);
+		droppedClosingTags = metrics.get(ConversionMetrics.Counter.DROPPED_CLOSING_TAGS);
+		mergedStyles = metrics.get(ConversionMetrics.Counter.MERGED_STYLES);
+		selfClosedElements = metrics.get(ConversionMetrics.Counter.SELF_CLOSED_ELEMENTS);
+	}
+}
@@ -0,0 +1,42 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Thrown when a document reaches one of the limits its converter was given, and the limits don't
+ * truncate it. The converter can't be used any further.
+ */
+public class ConversionLimitException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final ConversionLimits.Limit limit;
+
+	// The maximum is in milliseconds for the time, and in the limit's own unit otherwise.
+	ConversionLimitException(ConversionLimits.Limit limit, long maximum) {
+		super(describe(limit, maximum));
+		this.limit = limit;
+	}
+
+	private static String describe(ConversionLimits.Limit limit, long maximum) {
+		switch(limit) {
+			case TIME:
+				return String.format(Locale.ROOT, "The document took longer than %,d ms to convert.", maximum);
+			case SIZE:
+				return String.format(Locale.ROOT, "The document is larger than %,d characters.", maximum);
+			case TAGS:
+				return String.format(Locale.ROOT, "The document has more than %,d tags.", maximum);
+			case DEPTH:
+				return String.format(Locale.ROOT, "The document nests elements deeper than %,d.", maximum);
+			default:
+				return String.format(Locale.ROOT, "The document has a tag longer than %,d characters.", maximum);
+		}
+	}
+
+	/**
+	 * The limit the document reached.
+	 */
+	public ConversionLimits.Limit getLimit() {
+		return limit;
+	}
+}
@@ -0,0 +1,176 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Limits on the resources a single document may take to convert, for converting documents that can't
+ * be trusted, e.g. in the daemon. Everything is unlimited until it's set.
+ *
+ * The converter checks its limits as it goes: the time and the size every few thousand characters, and
+ * the others at the very tag that exceeds them. When a document reaches one of them, its conversion
+ * fails with a ConversionLimitException; or, with setTruncating(true), the document is cut short right
+ * before that point, and finished as if it had ended there, so the XHTML is still well-formed.
+ *
+ *     ConversionLimits limits = new ConversionLimits();
+ *     limits.setMaximumTime(Duration.ofSeconds(10));
+ *     limits.setMaximumDepth(512);
+ *     limits.setTruncating(true);
+ *     converter.setLimits(limits);
+ *
+ * A set of limits that's no longer being changed can be shared by any number of converters, on any thread.
+ */
+public class ConversionLimits {
+	/**
+	 * The limits a document can reach.
+	 */
+	public enum Limit {
+		// The time since the converter was given its limits.
+		TIME,
+		// The characters of the document.
+		SIZE,
+		// The tags of the BODY.
+		TAGS,
+		// The elements open at once, including those inserted to repair lists.
+		DEPTH,
+		// The characters of a single tag, including all of its attributes.
+		TAG_LENGTH
+	}
+
+	private volatile Duration maximumTime;
+	private volatile long maximumSize = Long.MAX_VALUE;
+	private volatile long maximumTags = Long.MAX_VALUE;
+	private volatile int maximumDepth = Integer.MAX_VALUE;
+	private volatile int maximumTagLength = Integer.MAX_VALUE;
+	private volatile boolean truncating = false;
+
+	/**
+	 * Limit the time a document may take, from the moment the converter is given the limits until it's
+	 * finished. Null turns the limit off.
+	 */
+	public void setMaximumTime(Duration maximumTime) {
+		this.maximumTime = maximumTime;
+	}
+
+	public Duration getMaximumTime() {
+		return maximumTime;
+	}
+
+	/**
+	 * Limit the size of a document, in characters.
+	 */
+	public void setMaximumSize(long maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Limit the number of tags in the BODY of a document, whether they're valid or not.
+	 */
+	public void setMaximumTags(long maximumTags) {
+		this.maximumTags = maximumTags;
+	}
+
+	public long getMaximumTags() {
+		return maximumTags;
+	}
+
+	/**
+	 * Limit how deeply the elements of a document may be nested. The pretty-printed XHTML indents every
+	 * line by its depth, so without this limit, its size can grow with the square of the document's.
+	 */
+	public void setMaximumDepth(int maximumDepth) {
+		this.maximumDepth = maximumDepth;
+	}
+
+	public int getMaximumDepth() {
+		return maximumDepth;
+	}
+
+	/**
+	 * Limit the length of a single tag, and so of its attribute values, in characters. A tag that's never
+	 * closed, like an attribute value that's missing its closing quote and '>', otherwise takes the rest
+	 * of the document with it, and all of it is held in memory.
+	 */
+	public void setMaximumTagLength(int maximumTagLength) {
+		this.maximumTagLength = maximumTagLength;
+	}
+
+	public int getMaximumTagLength() {
+		return maximumTagLength;
+	}
+
+	/**
+	 * Cut a document short at the limit it reaches, instead of failing its conversion.
+	 */
+	public void setTruncating(boolean truncating) {
+		this.truncating = truncating;
+	}
+
+	public boolean isTruncating() {
+		return truncating;
+	}
+
+	/**
+	 * Set limits from their command-line form: a comma-separated list like "time=10,size=64m,depth=512".
+	 * The limits are time (in seconds), size, tags, depth, and tag-length; the numbers can have a k, m, or
+	 * g suffix.
+	 */
+	public void set(String specification) {
+		for(String item : specification.split(",")) {
+			String[] nameAndValue = item.trim().split("=", 2);
+			if(nameAndValue.length != 2) {
+				throw new IllegalArgumentException("The limit " + item.trim() + " has no value.");
+			}
+			String name = nameAndValue[0].trim().toLowerCase(Locale.ROOT);
+			long value = parseAmount(nameAndValue[1].trim());
+			switch(name) {
+				case "time":
+					setMaximumTime(Duration.ofSeconds(value));
+					break;
+				case "size":
+					setMaximumSize(value);
+					break;
+				case "tags":
+					setMaximumTags(value);
+					break;
+				case "depth":
+					setMaximumDepth((int) Math.min(value, Integer.MAX_VALUE));
+					break;
+				case "tag-length":
+					setMaximumTagLength((int) Math.min(value, Integer.MAX_VALUE));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown limit " + name + "; the limits are time, size, tags, depth, and tag-length.");
+			}
+		}
+	}
+
+	// A number, with an optional k, m, or g suffix for 1024 or a power of it.
+	private static long parseAmount(String amount) {
+		long multiplier = 1;
+		String digits = amount.toLowerCase(Locale.ROOT);
+		if(digits.endsWith("k")) {
+			multiplier = 1L << 10;
+		} else if(digits.endsWith("m")) {
+			multiplier = 1L << 20;
+		} else if(digits.endsWith("g")) {
+			multiplier = 1L << 30;
+		}
+		if(multiplier > 1) {
+			digits = digits.substring(0, digits.length() - 1);
+		}
+		try {
+			long value = Long.parseLong(digits);
+			if(value < 0) {
+				throw new IllegalArgumentException("The limit " + amount + " is negative.");
+			}
+			return value > Long.MAX_VALUE / multiplier ? Long.MAX_VALUE : value * multiplier;
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("The limit " + amount + " isn't a number.");
+		}
+	}
+}
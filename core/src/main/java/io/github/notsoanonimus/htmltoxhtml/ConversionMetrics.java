@@ -0,0 +1,158 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals of what the converter has been doing, over any number of documents: how much time each phase
+ * of the conversion took, how much went in and out, and how much had to be repaired.
+ *
+ * Every converter keeps the metrics of its own document (XhtmlConverter.getMetrics()). Add them up here
+ * to watch a whole workload; snapshot() can be polled from any thread at any time, while conversions
+ * are still adding to the totals.
+ */
+public class ConversionMetrics {
+	/**
+	 * The timed phases of a conversion. Phase timings are only taken when they're turned on.
+	 */
+	public enum Phase {
+		// Collecting and correcting the HEAD, and writing the XHTML prologue.
+		HEAD,
+		// Tokenizing the document into text and raw tags.
+		TAG_EXTRACTION,
+		// Correcting each raw tag with the tag rules.
+		SANITIZATION,
+		// Fitting each tag into the nesting of the document, and writing it out.
+		NESTING,
+		// Writing the minimized XHTML, alongside the pretty-printed XHTML.
+		MINIMIZATION
+	}
+
+	/**
+	 * The counted quantities of a conversion.
+	 */
+	public enum Counter {
+		DOCUMENTS,
+		// Documents cut short at one of the limits of their converter, rather than failing.
+		TRUNCATED_DOCUMENTS,
+		// Bytes fed to the converter; documents fed as characters don't count here.
+		INPUT_BYTES,
+		// Characters of the (decoded) HTML document.
+		INPUT_CHARS,
+		// Bytes of XHTML written, pretty-printed and minimized, as UTF-8 (which the XHTML declares).
+		OUTPUT_BYTES,
+		MINIMIZED_BYTES,
+		// Tags found in the BODY, and how many of them were invalid and dropped.
+		TAGS,
+		DROPPED_TAGS,
+		// Tags looked up in the cache of the tag rules, if it's on, and found there or not.
+		TAG_CACHE_HITS,
+		TAG_CACHE_MISSES,
+		// UL elements inserted around orphaned LI elements.
+		INSERTED_LISTS,
+		// LI elements inserted into lists, around other elements or around bare content.
+		INSERTED_LIST_ITEMS,
+		// Elements closed because a closing tag for an element further down the stack came first.
+		CASCADED_CLOSES,
+		// Elements still open at the end of the document, which are closed there.
+		UNCLOSED_ELEMENTS,
+		// Closing tags for elements that weren't open, which are dropped.
+		DROPPED_CLOSING_TAGS,
+		// Tags whose inline style was merged from more than one attribute (e.g. style and bgcolor).
+		MERGED_STYLES,
+		// Tags of self-closing elements, which are forcibly closed.
+		SELF_CLOSED_ELEMENTS
+	}
+
+	private static final int PHASES = Phase.values().length;
+	private static final int COUNTERS = Counter.values().length;
+
+	private final LongAdder[] phaseNanos = newAdders(PHASES);
+	private final LongAdder[] counters = newAdders(COUNTERS);
+
+	/**
+	 * Add the metrics of one or more conversions to the totals.
+	 */
+	public void add(Snapshot snapshot) {
+		for(int i = 0; i < PHASES; i++) {
+			phaseNanos[i].add(snapshot.phaseNanos[i]);
+		}
+		for(int i = 0; i < COUNTERS; i++) {
+			counters[i].add(snapshot.counters[i]);
+		}
+	}
+
+	/**
+	 * Start over from zero. Conversions added at the same time may be partly kept.
+	 */
+	public void reset() {
+		for(LongAdder nanos : phaseNanos) {
+			nanos.reset();
+		}
+		for(LongAdder counter : counters) {
+			counter.reset();
+		}
+	}
+
+	/**
+	 * The totals so far. Conversions running at the same time may be partly included.
+	 */
+	public Snapshot snapshot() {
+		long[] nanos = new long[PHASES];
+		for(int i = 0; i < PHASES; i++) {
+			nanos[i] = phaseNanos[i].sum();
+		}
+		long[] counts = new long[COUNTERS];
+		for(int i = 0; i < COUNTERS; i++) {
+			counts[i] = counters[i].sum();
+		}
+		return new Snapshot(nanos, counts);
+	}
+
+	private static LongAdder[] newAdders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for(int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * The metrics at one point in time.
+	 */
+	public static class Snapshot {
+		private final long[] phaseNanos;
+		private final long[] counters;
+
+		Snapshot(long[] phaseNanos, long[] counters) {
+			this.phaseNanos = phaseNanos;
+			this.counters = counters;
+		}
+
+		/**
+		 * The nanoseconds spent in the given phase, as far as phase timings were turned on.
+		 */
+		public long getNanos(Phase phase) {
+			return phaseNanos[phase.ordinal()];
+		}
+
+		public long get(Counter counter) {
+			return counters[counter.ordinal()];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder metrics = new StringBuilder();
+			for(Counter counter : Counter.values()) {
+				metrics.append(String.format(Locale.ROOT, "%-22s %,d%n", counter.name().toLowerCase(Locale.ROOT), get(counter)));
+			}
+			if(Arrays.stream(phaseNanos).anyMatch(nanos -> nanos > 0)) {
+				for(Phase phase : Phase.values()) {
+					metrics.append(String.format(Locale.ROOT, "%-22s %,.3f ms%n", phase.name().toLowerCase(Locale.ROOT), getNanos(phase) / 1e6));
+				}
+			}
+			return metrics.toString().trim();
+		}
+	}
+}
@@ -0,0 +1,444 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * A long-running conversion service on a local HTTP endpoint, so that converting a document doesn't
+ * cost a JVM start, and every document after the first few runs on code the JIT has already compiled.
+ *
+ * POST the raw HTML to /convert, and the XHTML is streamed back as it's converted. The charset of the
+ * HTML is the one in the request's Content-Type, else the one sniffed from the document the same way
+ * as for files, else UTF-8; the XHTML is always UTF-8. The output parameter picks what comes back:
+ * "pretty" (the default), "minimized", or "console", which is both of them laid out the way the command
+ * line prints a single file. GET /metrics has the totals of every document converted so far, along with
+ * the tag cache and the server's own statistics.
+ *
+ * Connections are kept alive, and requests can be pipelined on them. Each request is handled on its own
+ * virtual thread where the JVM has them, and on a pooled thread otherwise, but only so many documents
+ * are converted at once: the requests beyond that wait their turn, up to a limit, and the rest are
+ * turned away with a 503 and a Retry-After, so that a flood of requests slows its clients down instead
+ * of the server.
+ */
+public class ConversionServer implements Closeable {
+	/** The port the server listens on by default. */
+	public static final int DEFAULT_PORT = 8570;
+	/** How long the server warms up by default, before it starts listening. */
+	public static final Duration DEFAULT_WARM_UP_TIME = Duration.ofSeconds(2);
+
+	// The built-in warm-up document, a bit of every kind of repair the converter does.
+	private static final String WARM_UP_DOCUMENT = "warmup.html";
+	// How many requests can be waiting for each document being converted.
+	private static final int WAITING_REQUESTS_PER_THREAD = 16;
+	// How long a request waits for its turn before it's turned away.
+	private static final long WAIT_MILLIS = 30_000;
+	// How many seconds a turned-away client is told to wait before it tries again.
+	private static final String RETRY_AFTER_SECONDS = "1";
+	// How many seconds the requests being handled get to finish when the server is closed.
+	private static final int STOP_DELAY_SECONDS = 5;
+	// The size of the chunks of the request body fed to the converter.
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final TagRules rules;
+	private final Trace trace;
+	private final int concurrency;
+
+	// The documents being converted, and the requests waiting for their turn.
+	private final Semaphore permits;
+	private final AtomicInteger waitingRequests = new AtomicInteger();
+	private final int maximumWaitingRequests;
+
+	// The totals of the converted documents' metrics, and whether their phases are timed.
+	private final ConversionMetrics metrics = new ConversionMetrics();
+	private volatile boolean phaseTimings = false;
+	// The limits every request is held to, if any.
+	private volatile ConversionLimits limits;
+	private final LongAdder convertedRequests = new LongAdder();
+	private final LongAdder failedRequests = new LongAdder();
+	private final LongAdder rejectedRequests = new LongAdder();
+	// Numbers the requests, to name them in the trace and the Flight Recorder events.
+	private final AtomicLong requestNumber = new AtomicLong();
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private volatile boolean closing = false;
+	private final CountDownLatch closed = new CountDownLatch(1);
+
+	/**
+	 * Create a server, which doesn't listen until it's started.
+	 *
+	 * @param rules The rules to correct every tag with.
+	 * @param trace Where to trace what happens to every tag, naming the request in every event.
+	 * @param concurrency How many documents to convert at once, e.g. the number of available processors.
+	 */
+	public ConversionServer(TagRules rules, Trace trace, int concurrency) {
+		if(concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1, not " + concurrency + ".");
+		}
+		this.rules = rules;
+		this.trace = trace;
+		this.concurrency = concurrency;
+		this.permits = new Semaphore(concurrency, true);
+		this.maximumWaitingRequests = concurrency * WAITING_REQUESTS_PER_THREAD;
+	}
+
+	/**
+	 * Turn the timing of each phase of every conversion on or off; see XhtmlConverter.setPhaseTimings().
+	 */
+	public void setPhaseTimings(boolean enabled) {
+		phaseTimings = enabled;
+	}
+
+	/**
+	 * Hold every document to the given limits, or to none if they're null; see XhtmlConverter.setLimits().
+	 * A document that reaches one has its response cut short, unless the limits truncate it. The warm-up
+	 * isn't limited.
+	 */
+	public void setLimits(ConversionLimits limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * The totals of the metrics of every document converted so far, warm-up documents excluded.
+	 */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Convert a corpus of documents over and over for the given time, so that the JIT has compiled the
+	 * converter before the first request comes in. The corpus is any number of files, directories, and
+	 * glob patterns, as for BatchConverter; if it's empty, a built-in document is used instead. Neither
+	 * the metrics nor the tag cache of the server are touched by the warm-up.
+	 *
+	 * @return How many documents were converted.
+	 */
+	public long warmUp(List<String> corpus, Duration time) throws IOException {
+		List<byte[]> documents = new ArrayList<>();
+		if(corpus.isEmpty()) {
+			try(InputStream in = ConversionServer.class.getResourceAsStream(WARM_UP_DOCUMENT)) {
+				if(in == null) {
+					throw new IOException("The warm-up document " + WARM_UP_DOCUMENT + " is missing.");
+				}
+				documents.add(in.readAllBytes());
+			}
+		}
+		for(String input : corpus) {
+			try(Stream<Path> files = BatchConverter.findFiles(input)) {
+				for(Path file : (Iterable<Path>)files::iterator) {
+					documents.add(Files.readAllBytes(file));
+				}
+			}
+		}
+		if(documents.isEmpty()) {
+			throw new IOException("The warm-up corpus has no documents.");
+		}
+
+		// Rules of their own, with a cache of the same size and the same entity output, so the warm-up
+		//   takes the same code paths.
+		TagRules warmUpRules = new TagRules();
+		TagCache cache = rules.getCache();
+		warmUpRules.setCacheSize(cache != null ? cache.getMaximumSize() : 0);
+		warmUpRules.setEntityOutput(rules.getEntityOutput());
+		long converted = 0;
+		long deadline = System.nanoTime() + time.toNanos();
+		while(System.nanoTime() - deadline < 0) {
+			for(byte[] document : documents) {
+				// Both with and without a minimized output.
+				Writer minimizedOut = converted % 2 == 0 ? Writer.nullWriter() : null;
+				convert(new ByteArrayInputStream(document), null, document.length, Writer.nullWriter(), minimizedOut, warmUpRules,
+					null, Trace.OFF, "warm-up", new DocumentMetrics(phaseTimings));
+				converted++;
+			}
+		}
+		return converted;
+	}
+
+	/**
+	 * Start listening on the given port of the loopback interface, or on any free port if it's 0.
+	 *
+	 * @return The address the server listens on.
+	 */
+	public InetSocketAddress start(int port) throws IOException {
+		if(server != null) {
+			throw new IllegalStateException("The server has already been started.");
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = newExecutor();
+		server.setExecutor(executor);
+		server.createContext("/convert", this::handleConvert);
+		server.createContext("/metrics", this::handleMetrics);
+		server.start();
+		return server.getAddress();
+	}
+
+	/**
+	 * Wait until the server is closed.
+	 */
+	public void awaitClose() throws InterruptedException {
+		closed.await();
+	}
+
+	/**
+	 * Stop listening, giving the documents being converted a few seconds to finish. Requests that come
+	 * in meanwhile are turned away. Closing it again does nothing.
+	 */
+	@Override
+	public synchronized void close() {
+		if(closed.getCount() == 0) {
+			return;
+		}
+		closing = true;
+		if(server != null) {
+			// The server's own delay is waited out in full on older JVMs, busy or not, so wait for the
+			//   conversions instead.
+			try {
+				permits.tryAcquire(concurrency, STOP_DELAY_SECONDS, TimeUnit.SECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			server.stop(0);
+			executor.shutdown();
+		}
+		closed.countDown();
+	}
+
+	/**
+	 * The statistics of the server: the requests converted, failed, and turned away, and the ones being
+	 * converted and waiting right now.
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%,d request(s) converted, %,d failed, %,d turned away; %d converting, %d waiting",
+			convertedRequests.sum(), failedRequests.sum(), rejectedRequests.sum(),
+			concurrency - permits.availablePermits(), waitingRequests.get());
+	}
+
+	// A thread per request: a virtual one on Java 21 and newer, a pooled platform thread before that.
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private void handleConvert(HttpExchange exchange) throws IOException {
+		try(exchange) {
+			if(!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "POST the HTML to convert.");
+				return;
+			}
+			Output output = Output.of(exchange.getRequestURI().getQuery());
+			if(output == null) {
+				respond(exchange, 400, "The output is one of pretty, minimized, or console.");
+				return;
+			}
+			if(closing || !admit()) {
+				rejectedRequests.increment();
+				exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+				respond(exchange, 503, "Too many requests, try again later.");
+				return;
+			}
+			try {
+				convert(exchange, output);
+			} finally {
+				permits.release();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Wait for a turn to convert a document, unless too many requests are waiting already.
+	private boolean admit() throws InterruptedException {
+		if(permits.tryAcquire()) {
+			return true;
+		}
+		if(waitingRequests.incrementAndGet() > maximumWaitingRequests) {
+			waitingRequests.decrementAndGet();
+			return false;
+		}
+		try {
+			return permits.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		} finally {
+			waitingRequests.decrementAndGet();
+		}
+	}
+
+	private void convert(HttpExchange exchange, Output output) throws IOException {
+		String document = "request " + requestNumber.incrementAndGet();
+		DocumentMetrics documentMetrics = new DocumentMetrics(phaseTimings);
+		try {
+			exchange.getResponseHeaders().set("Content-Type", output.contentType);
+			// No length, so the XHTML is sent in chunks as it's converted.
+			exchange.sendResponseHeaders(200, 0);
+			Writer response = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+			Charset charset = requestCharset(exchange.getRequestHeaders().getFirst("Content-Type"));
+			long length = requestLength(exchange.getRequestHeaders().getFirst("Content-Length"));
+			InputStream body = exchange.getRequestBody();
+			ConversionLimits limits = this.limits;
+			if(output == Output.CONSOLE) {
+				// The same layout as the command line: the minimized version comes after the pretty-printed one.
+				StringWriter minimized = new StringWriter();
+				convert(body, charset, length, response, minimized, rules, limits, trace, document, documentMetrics);
+				response.write("\n\n\nMinimized XHTML:\n");
+				response.write(minimized.toString());
+				response.write("\n");
+			} else if(output == Output.MINIMIZED) {
+				convert(body, charset, length, Writer.nullWriter(), response, rules, limits, trace, document, documentMetrics);
+			} else {
+				convert(body, charset, length, response, null, rules, limits, trace, document, documentMetrics);
+			}
+			response.flush();
+		} catch(IOException | RuntimeException e) {
+			// The status is long gone, so all that's left is to cut the response short.
+			failedRequests.increment();
+			throw e;
+		}
+		metrics.add(documentMetrics.snapshot());
+		convertedRequests.increment();
+	}
+
+	// Convert a document of the given length (or -1 if it's unknown) from raw bytes, in the given charset,
+	//   or the one sniffed from its first bytes, held to the given limits unless they're null.
+	private static void convert(InputStream in, Charset charset, long length, Writer out, Writer minimizedOut, TagRules rules,
+			ConversionLimits limits, Trace trace, String document, DocumentMetrics metrics) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		int read = 0;
+		while(buffer.hasRemaining() && read >= 0) {
+			read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+			if(read > 0) {
+				buffer.position(buffer.position() + read);
+			}
+		}
+		buffer.flip();
+		// A byte order mark beats the declared charset, the way it does in a browser.
+		int byteOrderMarkLength = HtmlInput.byteOrderMarkLength(buffer);
+		if(charset == null || byteOrderMarkLength > 0) {
+			charset = HtmlInput.detectCharset(buffer, charset != null ? charset : StandardCharsets.UTF_8);
+		}
+		buffer.position(byteOrderMarkLength);
+
+		XhtmlConverter converter = new XhtmlConverter(out, minimizedOut, charset, rules, trace.forDocument(document), metrics);
+		converter.setDocument(document);
+		converter.setParallelPool(length);
+		if(limits != null) {
+			converter.setLimits(limits);
+		}
+		while(buffer.hasRemaining()) {
+			converter.feed(buffer);
+			read = in.read(buffer.array());
+			buffer.clear().limit(Math.max(read, 0));
+		}
+		converter.finish();
+	}
+
+	// The charset of the request's Content-Type, if it names one that's known.
+	private static Charset requestCharset(String contentType) {
+		if(contentType == null) {
+			return null;
+		}
+		String charset = HtmlInput.contentTypeCharset(contentType.toLowerCase(Locale.ROOT));
+		return charset == null ? null : HtmlInput.forName(charset);
+	}
+
+	// The length of the request's body, or -1 if it's sent in chunks.
+	private static long requestLength(String contentLength) {
+		try {
+			return contentLength == null ? -1 : Long.parseLong(contentLength.trim());
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		try(exchange) {
+			if(!exchange.getRequestMethod().equals("GET")) {
+				exchange.getResponseHeaders().set("Allow", "GET");
+				respond(exchange, 405, "GET the metrics.");
+				return;
+			}
+			StringBuilder report = new StringBuilder();
+			report.append(metrics.snapshot()).append('\n');
+			if(rules.getCache() != null) {
+				report.append("Tag cache: ").append(rules.getCache()).append('\n');
+			}
+			report.append("Server: ").append(this);
+			respond(exchange, 200, report.toString());
+		}
+	}
+
+	// Send a short plain-text response.
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	// What a conversion request gets back.
+	private enum Output {
+		PRETTY("application/xhtml+xml; charset=utf-8"),
+		MINIMIZED("application/xhtml+xml; charset=utf-8"),
+		CONSOLE("text/plain; charset=utf-8");
+
+		final String contentType;
+
+		Output(String contentType) {
+			this.contentType = contentType;
+		}
+
+		// The output asked for by the "output" parameter of a query, or null if it's not one of them.
+		static Output of(String query) {
+			if(query == null) {
+				return PRETTY;
+			}
+			for(String parameter : query.split("&")) {
+				if(parameter.startsWith("output=")) {
+					String name = parameter.substring("output=".length()).toUpperCase(Locale.ROOT);
+					for(Output output : values()) {
+						if(output.name().equals(name)) {
+							return output;
+						}
+					}
+					return null;
+				}
+			}
+			return PRETTY;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+/**
+ * The metrics of a single conversion as it goes, kept in plain fields since a converter only ever runs
+ * on one thread at a time. The segments of a body converted in parallel each have their own.
+ */
+class DocumentMetrics {
+	private final long[] phaseNanos = new long[ConversionMetrics.Phase.values().length];
+	private final long[] counters = new long[ConversionMetrics.Counter.values().length];
+	// Whether the phases are being timed; checked before every call to System.nanoTime().
+	boolean timed;
+
+	DocumentMetrics(boolean timed) {
+		this.timed = timed;
+	}
+
+	void increment(ConversionMetrics.Counter counter) {
+		counters[counter.ordinal()]++;
+	}
+
+	void add(ConversionMetrics.Counter counter, long amount) {
+		counters[counter.ordinal()] += amount;
+	}
+
+	void addNanos(ConversionMetrics.Phase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	// Add up the metrics of a part of the document that was converted on its own.
+	void add(DocumentMetrics metrics) {
+		for(int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] += metrics.phaseNanos[i];
+		}
+		for(int i = 0; i < counters.length; i++) {
+			counters[i] += metrics.counters[i];
+		}
+	}
+
+	long get(ConversionMetrics.Counter counter) {
+		return counters[counter.ordinal()];
+	}
+
+	long getNanos(ConversionMetrics.Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	// Start timing a phase, returning what to hand to stop() at its end.
+	long start() {
+		return System.nanoTime() - totalNanos();
+	}
+
+	// Stop timing a phase, leaving out the time of any other phases that were timed in the meantime,
+	//   e.g. the body writer's phases while the tokenizer is running, or minimization while writing.
+	void stop(ConversionMetrics.Phase phase, long start) {
+		phaseNanos[phase.ordinal()] += System.nanoTime() - totalNanos() - start;
+	}
+
+	// The total time of all phases so far.
+	private long totalNanos() {
+		long total = 0;
+		for(long nanos : phaseNanos) {
+			total += nanos;
+		}
+		return total;
+	}
+
+	ConversionMetrics.Snapshot snapshot() {
+		return new ConversionMetrics.Snapshot(phaseNanos.clone(), counters.clone());
+	}
+}
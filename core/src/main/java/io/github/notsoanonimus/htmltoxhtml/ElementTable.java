@@ -0,0 +1,105 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Interns the element names of one document to small integer ids, with a precomputed table of flags
+ * per id, so that the nesting repair can work on ints instead of comparing Strings or running regexes.
+ *
+ * The common HTML elements have fixed ids shared by every document. Any other element name gets the
+ * next free id the first time it's interned in a document.
+ */
+class ElementTable {
+	// Per-element flags.
+	static final int LIST = 1;       // UL or OL, whose children should be LI elements
+	static final int LIST_ITEM = 2;  // LI
+
+	// Known HTML elements, which get ids 0 to N-1 in this order.
+	private static final String[] KNOWN_ELEMENTS = {
+		"a", "abbr", "acronym", "address", "applet", "area", "article", "aside", "audio", "b", "base",
+		"basefont", "bdi", "bdo", "big", "blink", "blockquote", "body", "br", "button", "canvas", "caption",
+		"center", "cite", "code", "col", "colgroup", "command", "data", "datalist", "dd", "del", "details",
+		"dfn", "dialog", "dir", "div", "dl", "dt", "em", "embed", "fieldset", "figcaption", "figure", "font",
+		"footer", "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hr",
+		"html", "i", "iframe", "img", "input", "ins", "kbd", "keygen", "label", "legend", "li", "link",
+		"main", "map", "mark", "marquee", "menu", "menuitem", "meta", "meter", "nav", "nobr", "noframes",
+		"noscript", "object", "ol", "optgroup", "option", "output", "p", "param", "picture", "pre",
+		"progress", "q", "rp", "rt", "ruby", "s", "samp", "script", "section", "select", "small", "source",
+		"span", "strike", "strong", "style", "sub", "summary", "sup", "svg", "table", "tbody", "td",
+		"template", "textarea", "tfoot", "th", "thead", "time", "title", "tr", "track", "tt", "u", "ul",
+		"var", "video", "wbr"
+	};
+	private static final HashMap<String, Integer> KNOWN_IDS = new HashMap<>();
+	static {
+		for(int id = 0; id < KNOWN_ELEMENTS.length; id++) {
+			KNOWN_IDS.put(KNOWN_ELEMENTS[id], id);
+		}
+	}
+
+	// Element names (other than the known ones) interned in this document, by name and by id.
+	private final HashMap<String, Integer> documentIds = new HashMap<>();
+	private String[] names = Arrays.copyOf(KNOWN_ELEMENTS, KNOWN_ELEMENTS.length + 16);
+	private int[] flags = new int[KNOWN_ELEMENTS.length + 16];
+	private int size = KNOWN_ELEMENTS.length;
+
+	ElementTable() {
+		for(int id = 0; id < KNOWN_ELEMENTS.length; id++) {
+			flags[id] = computeFlags(KNOWN_ELEMENTS[id]);
+		}
+	}
+
+	/**
+	 * Get the id of the given (lower-case) element name, giving it a new id if it hasn't been seen yet.
+	 */
+	int intern(String name) {
+		int id = find(name);
+		if(id >= 0) {
+			return id;
+		}
+		if(size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			flags = Arrays.copyOf(flags, size * 2);
+		}
+		id = size++;
+		names[id] = name;
+		flags[id] = computeFlags(name);
+		documentIds.put(name, id);
+		return id;
+	}
+
+	/**
+	 * Get the id of the given (lower-case) element name, or -1 if it hasn't been seen yet.
+	 */
+	int find(String name) {
+		Integer id = KNOWN_IDS.get(name);
+		if(id == null) {
+			id = documentIds.get(name);
+		}
+		return id != null ? id : -1;
+	}
+
+	// The number of ids handed out so far; every id is below this.
+	int size() {
+		return size;
+	}
+
+	String name(int id) {
+		return names[id];
+	}
+
+	boolean is(int id, int flag) {
+		return (flags[id] & flag) != 0;
+	}
+
+	private static int computeFlags(String name) {
+		int elementFlags = 0;
+		if(name.equals("ul") || name.equals("ol")) {
+			elementFlags |= LIST;
+		}
+		if(name.equals("li")) {
+			elementFlags |= LIST_ITEM;
+		}
+		return elementFlags;
+	}
+}
@@ -0,0 +1,219 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+/**
+ * Escapes HTML for XHTML as it streams past, a chunk at a time. Named character references are replaced
+ * by the characters they stand for, or by numeric references to them; numeric references are checked,
+ * and get their semicolon if they're missing it; and a stray '&' or '<' becomes "&amp;" or "&lt;".
+ * The five entities XML predefines are always written by name. A reference cut in two by the end of a
+ * chunk is held back until the rest of it arrives, or until flush().
+ *
+ * References are recognized the way an HTML5 parser recognizes them: the longest name in the table
+ * wins, even without its semicolon for the legacy names that allow that ("&copy 2024"), except in an
+ * attribute value followed by '=' or a letter or digit, as in "?a=1&copy=2".
+ */
+final class EntityEscaper {
+	// Where the escaper is at: in plain text, or somewhere in a reference after its '&'.
+	private static final int TEXT = 0;
+	private static final int NAME = 1;          // seen '&' and maybe part of a name
+	private static final int NUMBER = 2;        // seen "&#"
+	private static final int HEX_NUMBER = 3;    // seen "&#x"
+	private static final int DIGITS = 4;        // seen at least one digit of the number
+
+	// The code point that replaces a numeric reference to one XML doesn't allow.
+	private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+	private final EntityTrie entities;
+	private final boolean literal;
+	private final boolean attribute;
+
+	private int state = TEXT;
+	// The characters of the reference read so far, after its '&' (or "&#").
+	private final StringBuilder reference = new StringBuilder();
+	// The node the name has reached, and the longest complete name seen on the way there.
+	private int node;
+	private int match;
+	private int matchLength;
+	// The radix of the number and its value, which stops growing once it's too large to be a code point.
+	private int radix;
+	private int value;
+
+	/**
+	 * Create an escaper for the text of a document, or for its tags if attribute is true.
+	 */
+	EntityEscaper(TagRules.EntityOutput output, boolean attribute) {
+		this.entities = EntityTrie.HTML5;
+		this.literal = output == TagRules.EntityOutput.LITERAL;
+		this.attribute = attribute;
+	}
+
+	/**
+	 * Escape a whole tag at once. The tag's own '<' is kept, and only its attribute values can need it.
+	 */
+	static String escapeTag(String tag, TagRules.EntityOutput output) {
+		if(tag.indexOf('&') < 0 && tag.indexOf('<', 1) < 0) {
+			return tag;
+		}
+		StringBuilder escapedTag = new StringBuilder(tag.length() + 16).append('<');
+		EntityEscaper escaper = new EntityEscaper(output, true);
+		escaper.write(tag.substring(1), escapedTag);
+		escaper.flush(escapedTag);
+		return escapedTag.toString();
+	}
+
+	/**
+	 * Escape the next chunk of text onto the output.
+	 */
+	void write(CharSequence text, StringBuilder out) {
+		int length = text.length();
+		int i = 0;
+		while(i < length) {
+			if(state == TEXT) {
+				// Copy everything up to the next special character as it is.
+				int start = i;
+				while(i < length && text.charAt(i) != '&' && text.charAt(i) != '<') {
+					i++;
+				}
+				out.append(text, start, i);
+				if(i == length) {
+					return;
+				}
+			}
+			write(text.charAt(i++), out);
+		}
+	}
+
+	/**
+	 * The text is interrupted, by a tag or by the end of the document: whatever reference is still being
+	 * read ends here.
+	 */
+	void flush(StringBuilder out) {
+		switch(state) {
+			case NAME:
+				resolveName(-1, out);
+				return;
+			case NUMBER:
+			case HEX_NUMBER:
+				out.append("&amp;#").append(reference);
+				state = TEXT;
+				return;
+			case DIGITS:
+				writeNumber(out);
+				return;
+			default:
+		}
+	}
+
+	private void write(char c, StringBuilder out) {
+		switch(state) {
+			case TEXT:
+				if(c == '&') {
+					reference.setLength(0);
+					node = EntityTrie.ROOT;
+					match = -1;
+					matchLength = 0;
+					state = NAME;
+				} else if(c == '<') {
+					out.append("&lt;");
+				} else {
+					out.append(c);
+				}
+				return;
+			case NAME:
+				if(c == '#' && reference.length() == 0) {
+					value = 0;
+					radix = 10;
+					state = NUMBER;
+					return;
+				}
+				int child = entities.next(node, c);
+				if(child < 0) {
+					resolveName(c, out);
+					write(c, out);
+					return;
+				}
+				reference.append(c);
+				node = child;
+				if(entities.replacement(child, literal) != null) {
+					match = child;
+					matchLength = reference.length();
+				}
+				// Every name that goes no further ends with a semicolon, so it's complete right here.
+				if(!entities.hasChildren(child)) {
+					resolveName(-1, out);
+				}
+				return;
+			case NUMBER:
+				if(c == 'x' || c == 'X') {
+					reference.append(c);
+					radix = 16;
+					state = HEX_NUMBER;
+					return;
+				}
+				startNumber(c, out);
+				return;
+			case HEX_NUMBER:
+				startNumber(c, out);
+				return;
+			default:
+				int digit = digit(c, radix);
+				if(digit < 0) {
+					writeNumber(out);
+					if(c != ';') {
+						write(c, out);
+					}
+					return;
+				}
+				value = Math.min(value * radix + digit, Character.MAX_CODE_POINT + 1);
+		}
+	}
+
+	// The first digit of a number, or the sign that the '&' is stray after all.
+	private void startNumber(char c, StringBuilder out) {
+		int digit = digit(c, radix);
+		if(digit < 0) {
+			out.append("&amp;#").append(reference);
+			state = TEXT;
+			write(c, out);
+			return;
+		}
+		value = digit;
+		state = DIGITS;
+	}
+
+	// The name being read ends before the given character (or -1 if it's unknown): replace the longest
+	//   complete name in it, and write the rest of it as it is, or write all of it if there's no name.
+	private void resolveName(int next, StringBuilder out) {
+		state = TEXT;
+		if(matchLength > 0) {
+			int after = matchLength < reference.length() ? reference.charAt(matchLength) : next;
+			boolean legacy = reference.charAt(matchLength - 1) != ';';
+			if(!attribute || !legacy || (after != '=' && !isAlphanumeric(after))) {
+				out.append(entities.replacement(match, literal));
+				out.append(reference, matchLength, reference.length());
+				return;
+			}
+		}
+		out.append("&amp;").append(reference);
+	}
+
+	// Write the number that's been read as a decimal reference, if it's a character XML allows.
+	private void writeNumber(StringBuilder out) {
+		state = TEXT;
+		int codePoint = value;
+		if(codePoint > Character.MAX_CODE_POINT || (codePoint < 0x20 && codePoint != '\t' && codePoint != '\n' && codePoint != '\r')
+				|| (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)
+				|| codePoint == 0xFFFE || codePoint == 0xFFFF) {
+			codePoint = REPLACEMENT_CHARACTER;
+		}
+		out.append("&#").append(codePoint).append(';');
+	}
+
+	// The value of an ASCII digit in the radix, or -1 if it isn't one.
+	private static int digit(char c, int radix) {
+		return c < 0x80 ? Character.digit(c, radix) : -1;
+	}
+
+	private static boolean isAlphanumeric(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+}
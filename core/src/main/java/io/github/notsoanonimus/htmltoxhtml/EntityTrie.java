@@ -0,0 +1,170 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The HTML5 named character references, compiled into a trie that's walked a character at a time, so
+ * a reference can be recognized as the text streams past without knowing beforehand where it ends.
+ *
+ * The nodes are indexes into flat arrays. The children of a node are stored next to each other, sorted
+ * by their character, so finding a child is a binary search in a single array. A node that completes a
+ * name holds what it's replaced with, both as characters and as numeric references, already escaped
+ * for XHTML.
+ */
+final class EntityTrie {
+	/** All of the HTML5 named character references. */
+	static final EntityTrie HTML5 = load("entities.txt");
+
+	/** The node every name starts from. */
+	static final int ROOT = 0;
+
+	// The character leading into each node, and where its children are.
+	private final char[] labels;
+	private final int[] firstChild;
+	private final int[] childCount;
+	// What a complete name is replaced with, by node; null for nodes that aren't a complete name.
+	private final String[] literalReplacements;
+	private final String[] numericReplacements;
+
+	private EntityTrie(char[] labels, int[] firstChild, int[] childCount, String[] literalReplacements, String[] numericReplacements) {
+		this.labels = labels;
+		this.firstChild = firstChild;
+		this.childCount = childCount;
+		this.literalReplacements = literalReplacements;
+		this.numericReplacements = numericReplacements;
+	}
+
+	/**
+	 * The child of the node for the given character, or -1 if no name continues that way.
+	 */
+	int next(int node, char c) {
+		int from = firstChild[node];
+		int child = Arrays.binarySearch(labels, from, from + childCount[node], c);
+		return child >= 0 ? child : -1;
+	}
+
+	/**
+	 * Whether any name continues past the node.
+	 */
+	boolean hasChildren(int node) {
+		return childCount[node] > 0;
+	}
+
+	/**
+	 * What the name ending at the node is replaced with, as characters or as numeric references, or null
+	 * if no name ends there.
+	 */
+	String replacement(int node, boolean literal) {
+		return literal ? literalReplacements[node] : numericReplacements[node];
+	}
+
+	// Compile the table in the given resource: a name and its code points (in hexadecimal) per line.
+	private static EntityTrie load(String resource) {
+		Node root = new Node();
+		try(InputStream in = EntityTrie.class.getResourceAsStream(resource)) {
+			if(in == null) {
+				throw new IllegalStateException("The entity table " + resource + " is missing.");
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("[\t ]+");
+				Node node = root;
+				for(char c : fields[0].toCharArray()) {
+					node = node.children.computeIfAbsent(c, k -> new Node());
+				}
+				node.codePoints = new int[fields.length - 1];
+				for(int i = 1; i < fields.length; i++) {
+					node.codePoints[i - 1] = Integer.parseInt(fields[i], 16);
+				}
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		// Lay the nodes out breadth-first, so the children of each node end up next to each other.
+		List<Node> nodes = new ArrayList<>();
+		List<Character> nodeLabels = new ArrayList<>();
+		nodes.add(root);
+		nodeLabels.add('\0');
+		for(int i = 0; i < nodes.size(); i++) {
+			for(Map.Entry<Character, Node> child : nodes.get(i).children.entrySet()) {
+				nodes.add(child.getValue());
+				nodeLabels.add(child.getKey());
+			}
+		}
+		int size = nodes.size();
+		char[] labels = new char[size];
+		int[] firstChild = new int[size];
+		int[] childCount = new int[size];
+		String[] literalReplacements = new String[size];
+		String[] numericReplacements = new String[size];
+		int next = 1;
+		for(int i = 0; i < size; i++) {
+			Node node = nodes.get(i);
+			labels[i] = nodeLabels.get(i);
+			firstChild[i] = next;
+			childCount[i] = node.children.size();
+			next += childCount[i];
+			if(node.codePoints != null) {
+				literalReplacements[i] = replacement(node.codePoints, true);
+				numericReplacements[i] = replacement(node.codePoints, false);
+			}
+		}
+		return new EntityTrie(labels, firstChild, childCount, literalReplacements, numericReplacements);
+	}
+
+	// The XHTML for the given code points. The characters XML reserves are always written as the entities
+	//   it predefines for them, so a replacement never breaks the markup around it.
+	private static String replacement(int[] codePoints, boolean literal) {
+		StringBuilder replacement = new StringBuilder();
+		for(int codePoint : codePoints) {
+			String predefined = predefinedEntity(codePoint);
+			if(predefined != null) {
+				replacement.append(predefined);
+			} else if(literal) {
+				replacement.appendCodePoint(codePoint);
+			} else {
+				replacement.append("&#").append(codePoint).append(';');
+			}
+		}
+		return replacement.toString();
+	}
+
+	// The entity XML predefines for the character, if there is one.
+	private static String predefinedEntity(int c) {
+		switch(c) {
+			case '&':
+				return "&amp;";
+			case '<':
+				return "&lt;";
+			case '>':
+				return "&gt;";
+			case '"':
+				return "&quot;";
+			case '\'':
+				return "&apos;";
+			default:
+				return null;
+		}
+	}
+
+	// A node of the trie while it's being built.
+	private static class Node {
+		final TreeMap<Character, Node> children = new TreeMap<>();
+		int[] codePoints;
+	}
+}
@@ -0,0 +1,155 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+/**
+ * Corrects the raw content of the HEAD before it's written: every run of whitespace before a tag becomes
+ * a single line break (and the whitespace around the content goes), and every tag is sanitized with the same rules as the tags of the BODY, so its names
+ * are lower-cased, its values quoted, and the tags of self-closing elements closed. Nothing in the content
+ * of SCRIPT and STYLE elements is taken for a tag. META tags that declare a charset are dropped: the XML
+ * declaration of the output gives its encoding, which needn't be the one the input declared.
+ *
+ * Each of these is one pass over the HEAD. They used to be regular expressions, which backtracked: a HEAD
+ * that's never closed is the whole document, and a long run of whitespace, or of tags without a '>', took
+ * time quadratic in its length.
+ */
+final class HeadCorrector {
+	// The elements whose content isn't HTML, so nothing in it is a tag.
+	private static final String[] RAW_TEXT_ELEMENTS = { "script", "style" };
+
+	private HeadCorrector() {
+	}
+
+	/**
+	 * Correct the raw HEAD content, sanitizing its tags with the given rules.
+	 */
+	static String correct(String head, TagRules rules) {
+		// The line breaks around the content are written along with the tags of the HEAD.
+		return sanitizeTags(breakLines(head), rules).strip();
+	}
+
+	// Replace every run of whitespace that's followed by a '<' with a line break.
+	static String breakLines(String head) {
+		int length = head.length();
+		StringBuilder corrected = new StringBuilder(length);
+		int i = 0;
+		while(i < length) {
+			if(!isSpace(head.charAt(i))) {
+				corrected.append(head.charAt(i++));
+				continue;
+			}
+			int end = i;
+			while(end < length && isSpace(head.charAt(end))) {
+				end++;
+			}
+			if(end < length && head.charAt(end) == '<') {
+				corrected.append('\n');
+			} else {
+				corrected.append(head, i, end);
+			}
+			i = end;
+		}
+		return corrected.toString();
+	}
+
+	// Sanitize every tag, i.e. a '<', maybe whitespace and a '/', then a word character, and everything up
+	//   to the next '>', the same way the tokenizer finds the tags of the BODY. Tags that can't be sanitized
+	//   are dropped, along with the line break before them, and anything else is left alone.
+	static String sanitizeTags(String head, TagRules rules) {
+		int length = head.length();
+		StringBuilder corrected = new StringBuilder(length + 64);
+		XhtmlTag tag = new XhtmlTag();
+		// The first '>' at or after some position, found once for every '<' before it.
+		int close = -1;
+		int copied = 0;
+		int i = 0;
+		while((i = head.indexOf('<', i)) >= 0) {
+			int nameStart = i + 1;
+			while(nameStart < length && HtmlTokenizer.isWhitespace(head.charAt(nameStart))) {
+				nameStart++;
+			}
+			if(nameStart < length && head.charAt(nameStart) == '/') {
+				nameStart++;
+			}
+			if(nameStart == length || !HtmlTokenizer.isWordChar(head.charAt(nameStart))) {
+				i++;
+				continue;
+			}
+			if(close < nameStart) {
+				close = head.indexOf('>', nameStart);
+				// Without a '>', there are no more tags.
+				if(close < 0) {
+					break;
+				}
+			}
+			corrected.append(head, copied, i);
+			NormalizedTag normalizedTag = rules.normalize(head.substring(i, close + 1), tag);
+			if(normalizedTag != NormalizedTag.INVALID && !declaresCharset(normalizedTag, tag)) {
+				corrected.append(normalizedTag.xhtml);
+			} else if(corrected.length() > 0 && corrected.charAt(corrected.length() - 1) == '\n') {
+				corrected.setLength(corrected.length() - 1);
+			}
+			copied = i = close + 1;
+			// Skip over the content of a SCRIPT or STYLE element, up to its closing tag.
+			if(normalizedTag != NormalizedTag.INVALID && !normalizedTag.closing && !normalizedTag.selfClosing
+					&& isRawText(normalizedTag.element)) {
+				i = findClosingTag(head, i, normalizedTag.element);
+				corrected.append(head, copied, i);
+				copied = i;
+			}
+		}
+		return corrected.append(head, copied, length).toString();
+	}
+
+	// Whether a tag is a META tag declaring a charset, e.g. (<meta charset="utf-8" />), or
+	//   (<meta http-equiv="Content-Type" content="text/html; charset=windows-1252" />).
+	private static boolean declaresCharset(NormalizedTag normalizedTag, XhtmlTag tag) {
+		if(normalizedTag.closing || !normalizedTag.element.equals("meta")) {
+			return false;
+		}
+		String httpEquiv = tag.getAttribute("http-equiv");
+		return tag.getAttribute("charset") != null || httpEquiv != null && httpEquiv.trim().equalsIgnoreCase("content-type");
+	}
+
+	private static boolean isRawText(String element) {
+		for(String rawTextElement : RAW_TEXT_ELEMENTS) {
+			if(rawTextElement.equals(element)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Where the first closing tag of the given element at or after the given position starts, e.g. (</script>)
+	//   or (</SCRIPT >), or the end of the text if there isn't one.
+	private static int findClosingTag(String text, int from, String element) {
+		int i = from;
+		while((i = text.indexOf("</", i)) >= 0) {
+			if(startsWithIgnoreCase(text, i + 2, element)) {
+				return i;
+			}
+			i += 2;
+		}
+		return text.length();
+	}
+
+	// Whether the text at the given position starts with the (lower-case) name, in any ASCII case.
+	private static boolean startsWithIgnoreCase(String text, int start, String name) {
+		if(start + name.length() > text.length()) {
+			return false;
+		}
+		for(int i = 0; i < name.length(); i++) {
+			char c = text.charAt(start + i);
+			if(c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			if(c != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Equivalent to the regex '\s'.
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+}
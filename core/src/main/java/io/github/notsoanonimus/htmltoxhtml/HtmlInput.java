@@ -0,0 +1,282 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * An HTML file on its way into a converter, as raw bytes: large files are memory-mapped, and smaller
+ * ones are read, through a buffer that's reused by every file on the same thread. Either way, the bytes
+ * are decoded by the converter itself, a chunk at a time, so the document never exists as one String.
+ * Mapped bytes are copied into the buffer in bulk before they're decoded, since decoders only take
+ * their fast path on heap buffers.
+ *
+ * The charset is sniffed from the first bytes of the file the way a browser does it: a byte order mark
+ * decides it, and otherwise a META tag declaring a charset near the start of the document does. Files
+ * that declare neither are taken to be UTF-8.
+ */
+class HtmlInput implements Closeable {
+	// Files at least this large are memory-mapped rather than read.
+	static final long MAPPING_THRESHOLD = 1024 * 1024;
+	// How much of a mapped file is mapped at a time.
+	private static final long MAPPING_SIZE = 64 * 1024 * 1024;
+	// How far into the document to look for a META charset; browsers look at the first 1024 bytes.
+	private static final int PRESCAN_LENGTH = 1024;
+
+	// The read buffer of each thread.
+	private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64 * 1024));
+
+	private final FileChannel channel;
+	private final long size;
+	private final long mappingSize;
+	// The start of the file, and where the document starts in it (after any byte order mark).
+	private ByteBuffer start;
+	private final int documentStart;
+	private final Charset charset;
+
+	/**
+	 * Open a file and sniff its charset.
+	 */
+	HtmlInput(Path file) throws IOException {
+		this(file, MAPPING_SIZE);
+	}
+
+	// Open a file, mapping it (if it's large enough) the given number of bytes at a time.
+	HtmlInput(Path file, long mappingSize) throws IOException {
+		this.mappingSize = mappingSize;
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			size = channel.size();
+			if(size >= MAPPING_THRESHOLD) {
+				start = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, mappingSize));
+			} else {
+				start = READ_BUFFER.get();
+				start.clear();
+				// Fill up the buffer, or read the whole file if it's smaller.
+				int read = 0;
+				while(start.hasRemaining() && read >= 0) {
+					read = channel.read(start);
+				}
+				start.flip();
+			}
+			documentStart = byteOrderMarkLength(start);
+			charset = detectCharset(start, StandardCharsets.UTF_8);
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The charset of the file, to create the converter with.
+	 */
+	Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * The size of the file, in bytes.
+	 */
+	long getSize() {
+		return size;
+	}
+
+	/**
+	 * Feed the whole file into the converter, without finishing it.
+	 */
+	void feed(XhtmlConverter converter) throws IOException {
+		start.position(documentStart);
+		if(size >= MAPPING_THRESHOLD) {
+			// Map one window of the file after the other, feeding each of them a buffer at a time.
+			for(long position = 0; position < size; position += mappingSize) {
+				ByteBuffer mapped = position == 0 ? start
+					: channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, mappingSize));
+				ByteBuffer buffer = READ_BUFFER.get();
+				while(mapped.hasRemaining()) {
+					buffer.clear();
+					int limit = mapped.limit();
+					mapped.limit(Math.min(limit, mapped.position() + buffer.remaining()));
+					buffer.put(mapped);
+					mapped.limit(limit);
+					converter.feed(buffer.flip());
+				}
+			}
+		} else {
+			ByteBuffer buffer = start;
+			do {
+				converter.feed(buffer);
+				buffer.clear();
+			} while(channel.read(buffer) >= 0 && buffer.flip().hasRemaining());
+		}
+		start = null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * The length of the byte order mark at the start of the document, or 0 if there isn't one.
+	 */
+	static int byteOrderMarkLength(ByteBuffer start) {
+		Charset charset = byteOrderMarkCharset(start);
+		return charset == null ? 0 : charset == StandardCharsets.UTF_8 ? 3 : 2;
+	}
+
+	/**
+	 * The charset of a document starting with the given bytes: the one its byte order mark stands for,
+	 * else the one declared by a META tag near its start, else the fallback.
+	 */
+	static Charset detectCharset(ByteBuffer start, Charset fallback) {
+		Charset charset = byteOrderMarkCharset(start);
+		if(charset == null) {
+			charset = metaCharset(start);
+		}
+		return charset != null ? charset : fallback;
+	}
+
+	private static Charset byteOrderMarkCharset(ByteBuffer start) {
+		int first = byteAt(start, 0);
+		int second = byteAt(start, 1);
+		if(first == 0xEF && second == 0xBB && byteAt(start, 2) == 0xBF) {
+			return StandardCharsets.UTF_8;
+		} else if(first == 0xFE && second == 0xFF) {
+			return StandardCharsets.UTF_16BE;
+		} else if(first == 0xFF && second == 0xFE) {
+			return StandardCharsets.UTF_16LE;
+		}
+		return null;
+	}
+
+	// Look for '<meta charset="...">' or '<meta http-equiv="Content-Type" content="...; charset=...">'
+	//   in the first bytes of the document, which are read as ASCII, skipping comments.
+	private static Charset metaCharset(ByteBuffer start) {
+		int length = Math.min(start.limit(), PRESCAN_LENGTH);
+		StringBuilder prescan = new StringBuilder(length);
+		for(int i = 0; i < length; i++) {
+			prescan.append((char)(start.get(i) & 0xFF));
+		}
+		String document = prescan.toString().toLowerCase(Locale.ROOT);
+
+		int position = 0;
+		while((position = document.indexOf('<', position)) >= 0) {
+			if(document.startsWith("<!--", position)) {
+				int end = document.indexOf("-->", position + 4);
+				if(end < 0) {
+					return null;
+				}
+				position = end + 3;
+				continue;
+			}
+			position++;
+			if(!document.startsWith("meta", position) || position + 4 >= document.length()
+					|| !(isSpace(document.charAt(position + 4)) || document.charAt(position + 4) == '/')) {
+				continue;
+			}
+			// Collect the META tag's attributes, up to the end of the tag.
+			String charset = null;
+			String content = null;
+			boolean contentType = false;
+			position += 4;
+			while(position < document.length() && document.charAt(position) != '>') {
+				char c = document.charAt(position);
+				if(isSpace(c) || c == '/') {
+					position++;
+					continue;
+				}
+				int nameStart = position;
+				while(position < document.length() && "=>/".indexOf(document.charAt(position)) < 0 && !isSpace(document.charAt(position))) {
+					position++;
+				}
+				String name = document.substring(nameStart, position);
+				while(position < document.length() && isSpace(document.charAt(position))) {
+					position++;
+				}
+				String value = "";
+				if(position < document.length() && document.charAt(position) == '=') {
+					position++;
+					while(position < document.length() && isSpace(document.charAt(position))) {
+						position++;
+					}
+					int valueStart;
+					int valueEnd;
+					if(position < document.length() && (document.charAt(position) == '"' || document.charAt(position) == '\'')) {
+						valueStart = position + 1;
+						valueEnd = document.indexOf(document.charAt(position), valueStart);
+						if(valueEnd < 0) {
+							return null;
+						}
+						position = valueEnd + 1;
+					} else {
+						valueStart = position;
+						while(position < document.length() && document.charAt(position) != '>' && !isSpace(document.charAt(position))) {
+							position++;
+						}
+						valueEnd = position;
+					}
+					value = document.substring(valueStart, valueEnd).trim();
+				}
+				if(name.equals("charset") && charset == null) {
+					charset = value;
+				} else if(name.equals("content") && content == null) {
+					content = value;
+				} else if(name.equals("http-equiv")) {
+					contentType = value.equals("content-type");
+				}
+			}
+			if(charset == null && contentType && content != null) {
+				charset = contentTypeCharset(content);
+			}
+			Charset declared = charset == null ? null : forName(charset);
+			if(declared != null) {
+				// A document that could be read this far as ASCII can't really be UTF-16.
+				return declared.name().startsWith("UTF-16") ? StandardCharsets.UTF_8 : declared;
+			}
+		}
+		return null;
+	}
+
+	// The charset parameter of a lower-case content type like "text/html; charset=iso-8859-1".
+	static String contentTypeCharset(String contentType) {
+		int index = contentType.indexOf("charset");
+		if(index < 0) {
+			return null;
+		}
+		String charset = contentType.substring(index + 7).trim();
+		if(!charset.startsWith("=")) {
+			return null;
+		}
+		charset = charset.substring(1).trim();
+		int end = 0;
+		while(end < charset.length() && charset.charAt(end) != ';' && !isSpace(charset.charAt(end))) {
+			end++;
+		}
+		return charset.substring(0, end).replace("\"", "").replace("'", "");
+	}
+
+	static Charset forName(String name) {
+		try {
+			return Charset.forName(name);
+		} catch(IllegalCharsetNameException | UnsupportedCharsetException e) {
+			// An unknown charset is as good as no charset at all.
+			return null;
+		}
+	}
+
+	private static boolean isSpace(char c) {
+		return HtmlTokenizer.isWhitespace(c) || HtmlTokenizer.isLineBreak(c) || c == '\f';
+	}
+
+	private static int byteAt(ByteBuffer buffer, int index) {
+		return index < buffer.limit() ? buffer.get(index) & 0xFF : -1;
+	}
+}
@@ -0,0 +1,375 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class HtmlToXhtml {
+	// Regex-formatted list of known HTML self-closing element types.
+	static final String SELF_CLOSING_TAGS = "area|base|basefont|br|col|embed|frame|"
+			+ "hr|img|input|isindex|link|meta|param|source|track|wbr|command|keygen|menuitem";
+
+	// Regex-formatted list of known attributes that are valid for attribute minimization.
+	static final String MINIMIZABLE_ATTRIBUTES = "compact|checked|declare|readonly|disabled|"
+			+ "selected|defer|ismap|nohref|noshade|nowrap|multiple|noresize";
+
+	// How many distinct tags the command line caches by default.
+	private static final int DEFAULT_TAG_CACHE_SIZE = 10_000;
+
+	// Main function.
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	// Run the application with the given command-line arguments, returning its exit status.
+	//   A single file is converted to the console; anything else is converted as a batch of files.
+	static int run(String[] args) {
+		if(args.length == 0) {
+			System.out.println("Please enter a valid file as a parameter to this application.");
+			printUsage();
+			return 1;
+		}
+
+		// Options, then any number of files, directories, and glob patterns.
+		Path outputDirectory = null;
+		boolean writeMinimized = false;
+		boolean batchOptions = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String traceLevels = null;
+		String traceFile = null;
+		boolean printMetrics = false;
+		int tagCacheSize = DEFAULT_TAG_CACHE_SIZE;
+		TagRules.EntityOutput entityOutput = TagRules.EntityOutput.LITERAL;
+		boolean daemon = false;
+		int port = ConversionServer.DEFAULT_PORT;
+		List<String> warmUpCorpus = new ArrayList<>();
+		Duration warmUpTime = ConversionServer.DEFAULT_WARM_UP_TIME;
+		ConversionLimits limits = null;
+		boolean truncate = false;
+		List<String> inputs = new ArrayList<>();
+		try {
+			for(int i = 0; i < args.length; i++) {
+				switch(args[i]) {
+					case "-o":
+					case "--output":
+						outputDirectory = Paths.get(optionValue(args, ++i));
+						batchOptions = true;
+						break;
+					case "-m":
+					case "--minimized":
+						writeMinimized = true;
+						batchOptions = true;
+						break;
+					case "-t":
+					case "--threads":
+						threads = Integer.parseInt(optionValue(args, ++i));
+						batchOptions = true;
+						break;
+					case "--trace":
+						traceLevels = optionValue(args, ++i);
+						break;
+					case "--trace-file":
+						traceFile = optionValue(args, ++i);
+						break;
+					case "--metrics":
+						printMetrics = true;
+						break;
+					case "--tag-cache":
+						tagCacheSize = Integer.parseInt(optionValue(args, ++i));
+						break;
+					case "--entities":
+						entityOutput = entityOutput(optionValue(args, ++i));
+						break;
+					case "--daemon":
+						daemon = true;
+						break;
+					case "--port":
+						port = Integer.parseInt(optionValue(args, ++i));
+						break;
+					case "--warmup":
+						warmUpCorpus.add(optionValue(args, ++i));
+						break;
+					case "--warmup-time":
+						warmUpTime = Duration.ofSeconds(Integer.parseInt(optionValue(args, ++i)));
+						break;
+					case "--limits":
+						if(limits == null) {
+							limits = new ConversionLimits();
+						}
+						limits.set(optionValue(args, ++i));
+						break;
+					case "--truncate":
+						truncate = true;
+						break;
+					default:
+						if(args[i].startsWith("-")) {
+							throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+						}
+						inputs.add(args[i]);
+				}
+			}
+			if(daemon && !inputs.isEmpty()) {
+				throw new IllegalArgumentException("The daemon takes its documents over HTTP, not as input files.");
+			} else if(!daemon && inputs.isEmpty()) {
+				throw new IllegalArgumentException("No input files given.");
+			}
+			// Validate the trace levels before anything gets converted.
+			if(traceLevels != null) {
+				new Trace(event -> { }).withLevels(traceLevels);
+			}
+			if(truncate && limits == null) {
+				throw new IllegalArgumentException("Only documents that reach their --limits can be truncated.");
+			} else if(truncate) {
+				limits.setTruncating(true);
+			}
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			return 1;
+		}
+
+		// The trace goes to standard error or its own file, never into the XHTML on standard output.
+		PrintStream traceStream = null;
+		try {
+			Trace trace = Trace.OFF;
+			if(traceLevels != null) {
+				traceStream = traceFile != null ? new PrintStream(new FileOutputStream(traceFile), false, "UTF-8") : System.err;
+				trace = new Trace(Trace.jsonLines(traceStream)).withLevels(traceLevels);
+			}
+			TagRules rules = new TagRules();
+			rules.setCacheSize(tagCacheSize);
+			rules.setEntityOutput(entityOutput);
+			if(daemon) {
+				return serve(rules, limits, trace, threads, port, warmUpCorpus, warmUpTime, printMetrics);
+			}
+			String input = inputs.get(0);
+			if(inputs.size() == 1 && !batchOptions && !BatchConverter.isGlob(input) && !new File(input).isDirectory()) {
+				return convertToConsole(new File(input), rules, limits, trace.forDocument(input), printMetrics);
+			}
+			BatchConverter batch = new BatchConverter(rules, trace, outputDirectory, writeMinimized, threads);
+			batch.setPhaseTimings(printMetrics);
+			batch.setLimits(limits);
+			BatchConverter.Summary summary = batch.convert(inputs);
+			System.err.println(summary);
+			if(printMetrics) {
+				System.err.println(summary.getMetrics());
+				if(rules.getCache() != null) {
+					System.err.println("Tag cache: " + rules.getCache());
+				}
+			}
+			return summary.getFailedFiles() > 0 ? 1 : 0;
+		} catch(IOException e) {
+			System.err.println("Unable to write the trace: " + e);
+			return 1;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		} finally {
+			if(traceStream != null) {
+				traceStream.flush();
+				if(traceStream != System.err) {
+					traceStream.close();
+				}
+			}
+		}
+	}
+
+	// Run the conversion daemon until the JVM is shut down, e.g. with Ctrl+C.
+	private static int serve(TagRules rules, ConversionLimits limits, Trace trace, int threads, int port,
+			List<String> warmUpCorpus, Duration warmUpTime, boolean printMetrics) throws InterruptedException {
+		ConversionServer server = new ConversionServer(rules, trace, threads);
+		server.setPhaseTimings(printMetrics);
+		server.setLimits(limits);
+		InetSocketAddress address;
+		try {
+			long start = System.nanoTime();
+			long warmUpDocuments = server.warmUp(warmUpCorpus, warmUpTime);
+			System.err.println(String.format(Locale.ROOT, "Warmed up with %,d document(s) in %.2f s.",
+				warmUpDocuments, (System.nanoTime() - start) / 1e9));
+		} catch(IOException e) {
+			System.err.println("Unable to warm up: " + e);
+			return 1;
+		}
+		try {
+			address = server.start(port);
+		} catch(IOException e) {
+			System.err.println("Unable to listen on port " + port + ": " + e);
+			return 1;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			if(printMetrics) {
+				System.err.println(server.getMetrics().snapshot());
+			}
+			System.err.println("Server: " + server);
+		}));
+		System.err.println("Converting on http://" + address.getHostString() + ":" + address.getPort()
+			+ "/convert with " + threads + " thread(s).");
+		server.awaitClose();
+		return 0;
+	}
+
+	// Convert a single file, printing both output options to the console, and its metrics if wanted.
+	private static int convertToConsole(File inputHtmlFile, TagRules rules, ConversionLimits limits, Trace trace,
+			boolean printMetrics) {
+		// Basic sanity check: does the file exist?
+		if(!inputHtmlFile.exists() || inputHtmlFile.isDirectory()) {
+			System.out.println("Input raw HTML file is not valid!");
+			return 1;
+		}
+		try {
+			// Stream the file through the converter once, writing both output options at the same time.
+			//   The pretty-printed version goes straight to the console; the minimized version comes
+			//   after it, so it's held back until the end.
+			Writer consoleWriter = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+			StringWriter minimizedWriter = new StringWriter();
+			DocumentMetrics metrics = new DocumentMetrics(printMetrics);
+			try(HtmlInput input = new HtmlInput(inputHtmlFile.toPath())) {
+				XhtmlConverter converter = new XhtmlConverter(consoleWriter, minimizedWriter, input.getCharset(),
+					rules, trace, metrics);
+				converter.setParallelPool(input.getSize());
+				if(limits != null) {
+					converter.setLimits(limits);
+				}
+				input.feed(converter);
+				converter.finish();
+			}
+			consoleWriter.write("\n\n\nMinimized XHTML:\n");
+			consoleWriter.write(minimizedWriter.toString());
+			consoleWriter.write("\n");
+			consoleWriter.flush();
+			if(printMetrics) {
+				System.err.println(metrics.snapshot());
+			}
+		} catch (Exception e) {
+			// Generic exception-handler to write out the trace and exit.
+			e.printStackTrace();
+			return 1;
+		}
+		return 0;
+	}
+
+	private static TagRules.EntityOutput entityOutput(String value) {
+		for(TagRules.EntityOutput entityOutput : TagRules.EntityOutput.values()) {
+			if(entityOutput.name().equalsIgnoreCase(value)) {
+				return entityOutput;
+			}
+		}
+		throw new IllegalArgumentException("Entities are written as literal or numeric, not " + value + ".");
+	}
+
+	private static String optionValue(String[] args, int i) {
+		if(i >= args.length) {
+			throw new IllegalArgumentException("Option " + args[i - 1] + " needs a value.");
+		}
+		return args[i];
+	}
+
+	private static void printUsage() {
+		System.out.println();
+		System.out.println("Usage: HtmlToXhtml <file>");
+		System.out.println("           Print the XHTML of a single file, pretty-printed and minimized.");
+		System.out.println("       HtmlToXhtml [options] <file|directory|glob>...");
+		System.out.println("           Convert a batch of files in parallel, writing an .xhtml file for each of them.");
+		System.out.println("           Directories are searched for .html and .htm files; quote glob patterns.");
+		System.out.println("       HtmlToXhtml --daemon [options]");
+		System.out.println("           Convert the documents POSTed to http://127.0.0.1:<port>/convert until stopped.");
+		System.out.println();
+		System.out.println("Options:");
+		System.out.println("  -o, --output <directory>  Write the outputs here, mirroring the inputs' layout,");
+		System.out.println("                            instead of next to each input.");
+		System.out.println("  -m, --minimized           Also write a minimized .min.xhtml file for each input.");
+		System.out.println("  -t, --threads <count>     How many files or requests to convert at once (default: one per processor).");
+		System.out.println("  --trace <levels>          Trace what happens to each tag, as JSON lines on standard error, e.g.");
+		System.out.println("                            'all', or 'nesting=detail,sanitizer'. The phases are tokenizer,");
+		System.out.println("                            sanitizer, and nesting; the levels are off, basic, and detail.");
+		System.out.println("  --trace-file <file>       Write the trace to this file instead of standard error.");
+		System.out.println("  --tag-cache <size>        How many distinct tags to remember the sanitized form of, so that");
+		System.out.println("                            repeated tags aren't sanitized again (default: " + DEFAULT_TAG_CACHE_SIZE + ", 0 for none).");
+		System.out.println("  --entities <output>       Write named character references like &nbsp; as the 'literal'");
+		System.out.println("                            characters (the default), or as 'numeric' references.");
+		System.out.println("  --metrics                 Time each phase of the conversion, and print the timings and");
+		System.out.println("                            counts of what was read, written, and repaired to standard error.");
+		System.out.println("  --limits <limits>         Limit what a single document may take, e.g. 'time=10,size=64m,depth=512'.");
+		System.out.println("                            The limits are time (in seconds), size (in characters), tags, depth,");
+		System.out.println("                            and tag-length; a document that reaches one fails.");
+		System.out.println("  --truncate                Cut a document short at the limit it reaches instead, still well-formed.");
+		System.out.println("  --port <port>             The port the daemon listens on (default: " + ConversionServer.DEFAULT_PORT + ").");
+		System.out.println("  --warmup <file|directory|glob>");
+		System.out.println("                            Warm the daemon up on these documents instead of the built-in one.");
+		System.out.println("  --warmup-time <seconds>   How long the daemon warms up before it listens (default: "
+			+ ConversionServer.DEFAULT_WARM_UP_TIME.getSeconds() + ", 0 for none).");
+	}
+
+	/**
+	 * Convert a raw HTML document to a pretty-printed XHTML document, reading the HTML from the given
+	 * Reader and writing the XHTML to the given Writer as the conversion goes along. Neither of them is
+	 * closed, but the Writer is flushed at the end.
+	 */
+	public static void convert(Reader in, Writer out) throws IOException {
+		convert(in, out, XhtmlConverter.DEFAULT_RULES);
+	}
+
+	/**
+	 * Same as convert(Reader, Writer), correcting the tags with the given rules.
+	 */
+	public static void convert(Reader in, Writer out, TagRules rules) throws IOException {
+		convert(in, out, rules, Trace.OFF);
+	}
+
+	/**
+	 * Same as convert(Reader, Writer), correcting the tags with the given rules and tracing what happens
+	 * to them to the given trace.
+	 */
+	public static void convert(Reader in, Writer out, TagRules rules, Trace trace) throws IOException {
+		convert(in, new XhtmlConverter(out, StandardCharsets.UTF_8, rules, trace));
+	}
+
+	/**
+	 * Same as convert(Reader, Writer), also writing the minimized XHTML to the other Writer in the same
+	 * pass over the document.
+	 */
+	public static void convert(Reader in, Writer out, Writer minimizedOut) throws IOException {
+		convert(in, new XhtmlConverter(out, minimizedOut, StandardCharsets.UTF_8, XhtmlConverter.DEFAULT_RULES, Trace.OFF));
+	}
+
+	// Read the whole document into the given converter.
+	private static void convert(Reader in, XhtmlConverter converter) throws IOException {
+		char[] chunk = new char[8192];
+		int length;
+		while((length = in.read(chunk)) != -1) {
+			converter.write(chunk, 0, length);
+		}
+		converter.finish();
+	}
+
+	/**
+	 * Accept raw HTML input and return a pretty-printed XHTML document.
+	 */
+	public static String convert(String html) {
+		StringWriter xhtml = new StringWriter();
+		try {
+			convert(new StringReader(html), xhtml);
+		} catch (IOException e) {
+			// Strings don't do I/O.
+			throw new UncheckedIOException(e);
+		}
+		return xhtml.toString();
+	}
+}
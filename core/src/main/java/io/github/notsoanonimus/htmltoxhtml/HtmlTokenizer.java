@@ -0,0 +1,475 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+
+/**
+ * Character-level HTML tokenizer which splits the BODY of a raw HTML document into "text" and "tag"
+ * events in one forward pass.
+ *
+ * Each character goes through the same steps the whole document used to go through one after another:
+ * runs of line breaks are folded into a single space, empty list elements like "&lt;ul&gt; &lt;/ul&gt;"
+ * are dropped, everything outside of the (first) BODY element is ignored, and what remains is split
+ * into tags and text.
+ *
+ * A tag is an opening angle bracket, optional whitespace, an optional slash, at least one word
+ * character, and then everything up to the very next closing angle bracket (the same thing the old
+ * getHtmlTags regex matched). Everything else is text.
+ */
+class HtmlTokenizer {
+	/**
+	 * Receiver of the events produced by the tokenizer, in document order.
+	 */
+	interface Handler {
+		// The opening BODY tag was found; the events that follow are its content. Not called if there's no body.
+		void startBody() throws IOException;
+		// A run of text. May be called several times in a row between two tags.
+		void text(CharSequence text) throws IOException;
+		// A complete tag, including its angle brackets. Position is the tag's offset in the folded input.
+		void tag(String tag, long position) throws IOException;
+		// No more input will follow.
+		void end() throws IOException;
+	}
+
+	// Empty list matcher states, following "<\s*[duo]l[^>]*>\s*<\s*/[duo]l[^>]*>".
+	private static final int LIST_NONE = 0;
+	private static final int LIST_OPEN = 1;          // seen '<' and maybe whitespace
+	private static final int LIST_OPEN_TYPE = 2;     // seen the 'd', 'u' or 'o'
+	private static final int LIST_OPEN_TAG = 3;      // seen the 'l', waiting for '>'
+	private static final int LIST_BETWEEN = 4;       // seen the whole opening tag and maybe whitespace
+	private static final int LIST_CLOSE = 5;         // seen the next '<' and maybe whitespace
+	private static final int LIST_CLOSE_SLASH = 6;   // seen the '/'
+	private static final int LIST_CLOSE_TYPE = 7;    // seen the 'd', 'u' or 'o'
+	private static final int LIST_CLOSE_TAG = 8;     // seen the 'l', waiting for '>'
+
+	// Body extraction states.
+	private static final int BEFORE_BODY = 0;
+	private static final int IN_BODY = 1;
+	private static final int AFTER_BODY = 2;
+	private static final String BODY_OPENING_TAG = "<body>";
+	private static final String BODY_CLOSING_TAG = "</body>";
+
+	// Tokenizer states: plain text, or somewhere inside a candidate tag.
+	private static final int TEXT = 0;
+	private static final int OPEN = 1;        // seen '<' and maybe whitespace
+	private static final int OPEN_SLASH = 2;  // seen '<', maybe whitespace, and '/'
+	private static final int IN_TAG = 3;      // seen the element name, waiting for '>'
+
+	private final Handler handler;
+
+	// Whether the previous raw character was a line break (so that a run of them becomes one space).
+	private boolean inLineBreak = false;
+
+	// The possibly-empty list currently being matched, and where its second '<' is.
+	private final StringBuilder list = new StringBuilder();
+	private int listState = LIST_NONE;
+	private int listClosingStart = 0;
+
+	// Where the body extraction is at, and how much of the opening or closing BODY tag has been matched.
+	private int bodyState = BEFORE_BODY;
+	private final StringBuilder bodyTag = new StringBuilder();
+
+	// Text collected since the last emitted event.
+	private final StringBuilder text = new StringBuilder();
+	// The candidate tag currently being read (only used while not in the TEXT state).
+	private final StringBuilder candidate = new StringBuilder();
+	private int state = TEXT;
+	// Offset of the next character in the folded input, and the offset of the current candidate tag.
+	private long position = 0;
+	private long candidatePosition = 0;
+	// The longest a tag may get, candidate or held back as a possibly-empty list, before it's a limit.
+	private int maximumTagLength = Integer.MAX_VALUE;
+
+	HtmlTokenizer(Handler handler) {
+		this(handler, false);
+	}
+
+	// A tokenizer that's in the body from the start, for a segment of a body that's split up.
+	HtmlTokenizer(Handler handler, boolean inBody) {
+		this.handler = handler;
+		if(inBody) {
+			bodyState = IN_BODY;
+		}
+	}
+
+	/**
+	 * Limit the length of a tag. A longer one, even if it's never closed, fails with a
+	 * ConversionLimitException as soon as it's that long, after the text before it is handed off.
+	 */
+	void setMaximumTagLength(int maximumTagLength) {
+		this.maximumTagLength = maximumTagLength;
+	}
+
+	/**
+	 * Feed a chunk of raw characters into the tokenizer. Any complete text is handed off at the end of the
+	 * chunk, so the tokenizer itself never holds more than a chunk's worth of it.
+	 */
+	void write(char[] input, int offset, int length) throws IOException {
+		for(int i = offset; i < offset + length; i++) {
+			write(input[i]);
+		}
+		flushText();
+	}
+
+	/**
+	 * Feed a chunk of raw characters into the tokenizer.
+	 */
+	void write(CharSequence input) throws IOException {
+		for(int i = 0; i < input.length(); i++) {
+			write(input.charAt(i));
+		}
+		flushText();
+	}
+
+	// Feed a single raw character into the tokenizer.
+	private void write(char c) throws IOException {
+		// Fold every run of line breaks (the regex '\R+') into a single space.
+		if(isLineBreak(c)) {
+			if(inLineBreak) {
+				return;
+			}
+			inLineBreak = true;
+			c = ' ';
+		} else {
+			inLineBreak = false;
+		}
+		position++;
+		removeEmptyLists(c);
+	}
+
+	/**
+	 * Signal the end of the input. Anything still held back turns out to be plain text.
+	 */
+	void end() throws IOException {
+		endSegment();
+		handler.end();
+	}
+
+	/**
+	 * Signal the end of a segment of the input, handing off everything that's held back as the end of
+	 * the input would, but without ending the document.
+	 *
+	 * Right after a '>' that's followed by anything but '<', whitespace, or a line break, nothing is held
+	 * back that the next character wouldn't let through anyway, and every state is back to where it is
+	 * at the start of the body; so a body can be split in two there, and each part tokenized on its own.
+	 * The exception is the '>' of a closing list tag, which may be the end of an empty list that's
+	 * dropped without the tokenizer ever seeing it.
+	 */
+	void endSegment() throws IOException {
+		// An unfinished empty list can't be one.
+		if(listState != LIST_NONE) {
+			listState = LIST_NONE;
+			extractBody(list, 0, list.length());
+			list.setLength(0);
+		}
+		// A partial closing BODY tag is just content, and there's no closing tag needed to end the body.
+		if(bodyState == IN_BODY) {
+			for(int i = 0; i < bodyTag.length(); i++) {
+				tokenize(bodyTag.charAt(i));
+			}
+			bodyTag.setLength(0);
+		}
+		// An unterminated candidate tag is just text.
+		if(state != TEXT) {
+			text.append(candidate);
+			candidate.setLength(0);
+			state = TEXT;
+		}
+		flushText();
+	}
+
+	// Offset of the next character in the folded input.
+	long getPosition() {
+		return position;
+	}
+
+	// Whether the closing BODY tag has been seen, so that the rest of the input is ignored.
+	boolean isAfterBody() {
+		return bodyState == AFTER_BODY;
+	}
+
+	// The closing BODY tag was seen elsewhere, in a segment of the input tokenized on its own.
+	void skipAfterBody() {
+		bodyState = AFTER_BODY;
+	}
+
+	// Whether the input can be split in two right before the given character, as described at
+	//   endSegment(). Only the characters from start on are looked back at; if they aren't enough to
+	//   tell, it can't be.
+	static boolean isSegmentBoundary(char[] input, int start, int i) {
+		if(i <= start || input[i - 1] != '>' || input[i] == '<' || isWhitespace(input[i]) || isLineBreak(input[i])) {
+			return false;
+		}
+		// A closing list tag can't hold a '>', so it would start after the previous one.
+		for(int j = i - 2; j >= start; j--) {
+			if(input[j] == '>') {
+				return true;
+			}
+			if(input[j] == '<' && isClosingListTag(input, j + 1, i - 1)) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	// Whether the characters after a '<' start a closing list tag, i.e. whitespace, a '/', and "dl",
+	//   "ul" or "ol".
+	private static boolean isClosingListTag(char[] input, int from, int end) {
+		while(from < end && (isWhitespace(input[from]) || isLineBreak(input[from]))) {
+			from++;
+		}
+		return from + 2 < end && input[from] == '/' && isListType(input[from + 1]) && input[from + 2] == 'l';
+	}
+
+	// Drop empty Definition Lists "dl", or UL/OL lists, i.e. an opening list tag, maybe some whitespace,
+	//   and then a closing list tag. Characters are held back for as long as they could be part of one.
+	private void removeEmptyLists(char c) throws IOException {
+		checkTagLength(list);
+		switch(listState) {
+			case LIST_NONE:
+				if(c == '<') {
+					list.append(c);
+					listState = LIST_OPEN;
+				} else {
+					extractBody(c);
+				}
+				return;
+			case LIST_OPEN:
+				if(isWhitespace(c)) {
+					list.append(c);
+				} else if(isListType(c)) {
+					list.append(c);
+					listState = LIST_OPEN_TYPE;
+				} else {
+					rejectList(c);
+				}
+				return;
+			case LIST_OPEN_TYPE:
+				if(c == 'l') {
+					list.append(c);
+					listState = LIST_OPEN_TAG;
+				} else {
+					rejectList(c);
+				}
+				return;
+			case LIST_OPEN_TAG:
+				list.append(c);
+				if(c == '>') {
+					listState = LIST_BETWEEN;
+				}
+				return;
+			case LIST_BETWEEN:
+				if(isWhitespace(c)) {
+					list.append(c);
+				} else if(c == '<') {
+					listClosingStart = list.length();
+					list.append(c);
+					listState = LIST_CLOSE;
+				} else {
+					rejectList(c);
+				}
+				return;
+			case LIST_CLOSE:
+				if(isWhitespace(c)) {
+					list.append(c);
+				} else if(c == '/') {
+					list.append(c);
+					listState = LIST_CLOSE_SLASH;
+				} else {
+					rejectClosingList(c);
+				}
+				return;
+			case LIST_CLOSE_SLASH:
+				if(isListType(c)) {
+					list.append(c);
+					listState = LIST_CLOSE_TYPE;
+				} else {
+					rejectClosingList(c);
+				}
+				return;
+			case LIST_CLOSE_TYPE:
+				if(c == 'l') {
+					list.append(c);
+					listState = LIST_CLOSE_TAG;
+				} else {
+					rejectClosingList(c);
+				}
+				return;
+			default:
+				if(c == '>') {
+					// The whole empty list is matched: drop it.
+					list.setLength(0);
+					listState = LIST_NONE;
+				} else {
+					list.append(c);
+				}
+		}
+	}
+
+	// The held-back characters aren't an empty list. No other empty list can start inside the opening
+	//   tag or the whitespace after it (it would end in the very same place), so let them all through
+	//   and re-examine the offending character.
+	private void rejectList(char c) throws IOException {
+		listState = LIST_NONE;
+		extractBody(list, 0, list.length());
+		list.setLength(0);
+		removeEmptyLists(c);
+	}
+
+	// Same as above, except the '<' that was expected to start the closing tag may still open another list.
+	private void rejectClosingList(char c) throws IOException {
+		listState = LIST_NONE;
+		extractBody(list, 0, listClosingStart);
+		String rest = list.substring(listClosingStart);
+		list.setLength(0);
+		for(int i = 0; i < rest.length(); i++) {
+			removeEmptyLists(rest.charAt(i));
+		}
+		removeEmptyLists(c);
+	}
+
+	private void extractBody(CharSequence chars, int start, int end) throws IOException {
+		for(int i = start; i < end; i++) {
+			extractBody(chars.charAt(i));
+		}
+	}
+
+	// Only pass on the content between the first "<body>" and the next "</body>" (in any case).
+	private void extractBody(char c) throws IOException {
+		switch(bodyState) {
+			case BEFORE_BODY:
+				if(Character.toLowerCase(c) == BODY_OPENING_TAG.charAt(bodyTag.length())) {
+					bodyTag.append(c);
+					if(bodyTag.length() == BODY_OPENING_TAG.length()) {
+						bodyTag.setLength(0);
+						bodyState = IN_BODY;
+						handler.startBody();
+					}
+				} else {
+					// A '<' is the only way to (re)start the tag.
+					bodyTag.setLength(0);
+					if(c == '<') {
+						bodyTag.append(c);
+					}
+				}
+				return;
+			case IN_BODY:
+				if(Character.toLowerCase(c) == BODY_CLOSING_TAG.charAt(bodyTag.length())) {
+					bodyTag.append(c);
+					if(bodyTag.length() == BODY_CLOSING_TAG.length()) {
+						bodyTag.setLength(0);
+						bodyState = AFTER_BODY;
+					}
+					return;
+				}
+				// Not the closing tag after all, so the held-back characters are content.
+				for(int i = 0; i < bodyTag.length(); i++) {
+					tokenize(bodyTag.charAt(i));
+				}
+				bodyTag.setLength(0);
+				if(c == '<') {
+					bodyTag.append(c);
+				} else {
+					tokenize(c);
+				}
+				return;
+			default:
+				// Everything after the body is ignored.
+		}
+	}
+
+	private void tokenize(char c) throws IOException {
+		switch(state) {
+			case TEXT:
+				if(c == '<') {
+					startCandidate(c);
+				} else {
+					text.append(c);
+				}
+				return;
+			case OPEN:
+				if(isWhitespace(c)) {
+					candidate.append(c);
+					checkTagLength(candidate);
+				} else if(c == '/') {
+					candidate.append(c);
+					state = OPEN_SLASH;
+				} else if(isWordChar(c)) {
+					candidate.append(c);
+					state = IN_TAG;
+				} else {
+					rejectCandidate(c);
+				}
+				return;
+			case OPEN_SLASH:
+				if(isWordChar(c)) {
+					candidate.append(c);
+					state = IN_TAG;
+				} else {
+					rejectCandidate(c);
+				}
+				return;
+			default:
+				candidate.append(c);
+				checkTagLength(candidate);
+				if(c == '>') {
+					// The tag is complete: hand off the text before it, then the tag itself.
+					flushText();
+					handler.tag(candidate.toString(), candidatePosition);
+					candidate.setLength(0);
+					state = TEXT;
+				}
+		}
+	}
+
+	// Begin reading a possible tag at the current position.
+	private void startCandidate(char c) {
+		candidate.append(c);
+		candidatePosition = position;
+		state = OPEN;
+	}
+
+	// The candidate turned out not to be a tag. It can only hold '<', whitespace and '/', so none of it
+	//   can start another tag; move it to the text and re-examine the offending character.
+	private void rejectCandidate(char c) throws IOException {
+		text.append(candidate);
+		candidate.setLength(0);
+		state = TEXT;
+		tokenize(c);
+	}
+
+	// Fail once a tag is longer than the limit, handing off the text before it first.
+	private void checkTagLength(CharSequence tag) throws IOException {
+		if(tag.length() > maximumTagLength) {
+			flushText();
+			throw new ConversionLimitException(ConversionLimits.Limit.TAG_LENGTH, maximumTagLength);
+		}
+	}
+
+	private void flushText() throws IOException {
+		if(text.length() > 0) {
+			handler.text(text);
+			text.setLength(0);
+		}
+	}
+
+	// Equivalent to the regex '\R' (a single code unit of it, anyway).
+	static boolean isLineBreak(char c) {
+		return c == '\n' || c == '\r' || c == '\u000B' || c == '\f'
+			|| c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	// Equivalent to the regex '\s', minus the line breaks which never reach the tokenizer.
+	static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	// Equivalent to the regex '\w'.
+	static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	// The first letter of a "dl", "ul" or "ol" element.
+	private static boolean isListType(char c) {
+		return c == 'd' || c == 'u' || c == 'o';
+	}
+}
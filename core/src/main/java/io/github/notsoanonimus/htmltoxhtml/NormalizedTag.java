@@ -0,0 +1,25 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+/**
+ * A raw tag as it ends up after sanitization: the finished XHTML tag and what the nesting repair needs
+ * to know about it. Immutable, so it can be cached and shared between documents.
+ */
+class NormalizedTag {
+	// Stands for every tag that's invalid, and dropped.
+	static final NormalizedTag INVALID = new NormalizedTag(null, null, false, false, false);
+
+	final String xhtml;
+	final String element;
+	final boolean closing;
+	final boolean selfClosing;
+	// Whether the inline style was merged from more than one attribute.
+	final boolean mergedStyle;
+
+	NormalizedTag(String xhtml, String element, boolean closing, boolean selfClosing, boolean mergedStyle) {
+		this.xhtml = xhtml;
+		this.element = element;
+		this.closing = closing;
+		this.selfClosing = selfClosing;
+		this.mergedStyle = mergedStyle;
+	}
+}
@@ -0,0 +1,291 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Converts the BODY of a large document in segments, in parallel, with the same result as converting
+ * it in one go.
+ *
+ * The body is cut into segments of about SEGMENT_SIZE characters, each right after a tag where the
+ * tokenizer holds nothing back (see HtmlTokenizer.endSegment()). Each segment is tokenized, its text
+ * escaped, and its tags sanitized on the pool, since none of that depends on anything before it. Only
+ * the nesting repair, the indentation, and the writing of the output depend on the whole document so
+ * far, so the segments are merged into the body writer one after the other, in document order, by the
+ * thread feeding the document.
+ *
+ * Only so many segments are converting at once, so memory use still doesn't depend on the size of the
+ * document; once they're all busy, feeding the document waits for the oldest one to be merged. A body
+ * that goes on for MAXIMUM_SEGMENT_SIZE without a boundary, like one long text or a tag that's never
+ * closed, is tokenized right here from then on, as it would have been without the pool.
+ */
+class ParallelBodyConverter {
+	// The size of a segment, in characters, unless the next boundary is further off.
+	static final int SEGMENT_SIZE = 256 * 1024;
+	// The most characters held back while looking for a boundary.
+	static final int MAXIMUM_SEGMENT_SIZE = 4 * SEGMENT_SIZE;
+	// How many segments can be converting for each thread of the pool.
+	private static final int SEGMENTS_PER_THREAD = 2;
+
+	private final ForkJoinPool pool;
+	private final XhtmlBodyWriter bodyWriter;
+	private final TagRules rules;
+	private final DocumentMetrics metrics;
+	private final int maximumSegments;
+	private final int maximumTagLength;
+
+	// The characters of the segment being collected, and how far it's been searched for a boundary.
+	private char[] buffer = new char[SEGMENT_SIZE + 8192];
+	private int length = 0;
+	private int searched = 0;
+	// The segments converting, oldest first.
+	private final ArrayDeque<ForkJoinTask<Segment>> segments = new ArrayDeque<>();
+
+	// The folded position of the next segment, and whether the closing BODY tag has been merged already,
+	//   so that the rest is ignored.
+	private long position;
+	private boolean bodyEnded = false;
+	// Tokenizes the rest of the body right here, once it couldn't be cut into segments.
+	private HtmlTokenizer sequential;
+
+	// The body starts after the given folded position; everything written from now on is the body.
+	ParallelBodyConverter(ForkJoinPool pool, XhtmlBodyWriter bodyWriter, TagRules rules, DocumentMetrics metrics,
+			long position, int maximumTagLength) {
+		this.pool = pool;
+		this.bodyWriter = bodyWriter;
+		this.rules = rules;
+		this.metrics = metrics;
+		this.maximumSegments = pool.getParallelism() * SEGMENTS_PER_THREAD;
+		this.position = position;
+		this.maximumTagLength = maximumTagLength;
+	}
+
+	// Add the next characters of the body, starting the conversion of every segment that's complete.
+	void write(char[] chunk, int offset, int count) throws IOException {
+		// Take a large chunk a segment's worth at a time, so that no more than that is held back on top of
+		//   the segments converting, however large the chunk.
+		while(count > 0 && sequential == null) {
+			int slice = Math.min(count, SEGMENT_SIZE);
+			append(chunk, offset, slice);
+			offset += slice;
+			count -= slice;
+		}
+		if(count > 0) {
+			tokenize(chunk, offset, count);
+		}
+	}
+
+	// Add the next characters of the body, and cut off every segment that's complete.
+	private void append(char[] chunk, int offset, int count) throws IOException {
+		if(length + count > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+		}
+		System.arraycopy(chunk, offset, buffer, length, count);
+		length += count;
+
+		// Look for a boundary once the segment is large enough, in the characters not searched yet, and
+		//   start converting the segment up to it; then do the same for the next segment after it.
+		int start = 0;
+		while(length - start > SEGMENT_SIZE) {
+			int boundary = start + Math.max(SEGMENT_SIZE, searched);
+			while(boundary < length && !HtmlTokenizer.isSegmentBoundary(buffer, start, boundary)) {
+				boundary++;
+			}
+			if(boundary >= length) {
+				searched = length - start;
+				break;
+			}
+			segments.add(pool.submit(new Segment(Arrays.copyOfRange(buffer, start, boundary))));
+			start = boundary;
+			searched = 0;
+			mergeDone();
+		}
+		length -= start;
+		System.arraycopy(buffer, start, buffer, 0, length);
+		if(length > MAXIMUM_SEGMENT_SIZE) {
+			stop();
+			return;
+		}
+		mergeDone();
+	}
+
+	// Merge what's done already, and wait for the oldest segments if too many are still busy.
+	private void mergeDone() throws IOException {
+		while(!segments.isEmpty() && (segments.peek().isDone() || segments.size() > maximumSegments)) {
+			merge(segments.poll().join());
+		}
+	}
+
+	// Give up on segments: merge the ones converting, and tokenize what's held back, and the rest of the
+	//   body after it, right here. Nothing of it is looked at anymore once the body has ended.
+	private void stop() throws IOException {
+		while(!segments.isEmpty()) {
+			merge(segments.poll().join());
+		}
+		sequential = new HtmlTokenizer(bodyWriter, true);
+		sequential.setMaximumTagLength(maximumTagLength);
+		if(bodyEnded) {
+			sequential.skipAfterBody();
+		}
+		char[] held = buffer;
+		buffer = null;
+		tokenize(held, 0, length);
+		length = 0;
+	}
+
+	// Tokenize the next characters right here, straight into the body writer.
+	private void tokenize(char[] chunk, int offset, int count) throws IOException {
+		boolean timed = metrics.timed;
+		long start = timed ? metrics.start() : 0;
+		sequential.write(chunk, offset, count);
+		if(timed) {
+			metrics.stop(ConversionMetrics.Phase.TAG_EXTRACTION, start);
+		}
+	}
+
+	// The body is cut short after what's been written so far: convert all of it right away, as it would
+	//   be without the pool, except for what's held back, since it can't be finished anymore.
+	void truncate() throws IOException {
+		if(sequential == null && buffer != null) {
+			stop();
+		}
+	}
+
+	// Drop the rest of the body, along with the segments still converting.
+	void cancel() {
+		for(ForkJoinTask<Segment> segment : segments) {
+			segment.cancel(false);
+		}
+		segments.clear();
+		buffer = null;
+		length = 0;
+		bodyEnded = true;
+	}
+
+	// The body is complete: convert the last segment right here, and merge all of them.
+	void finish() throws IOException {
+		if(sequential != null) {
+			sequential.endSegment();
+			return;
+		}
+		Segment last = new Segment(Arrays.copyOf(buffer, length)).call();
+		length = 0;
+		while(!segments.isEmpty()) {
+			merge(segments.poll().join());
+		}
+		merge(last);
+	}
+
+	// Feed a converted segment's text and tags into the body writer, which repairs their nesting.
+	private void merge(Segment segment) throws IOException {
+		if(bodyEnded) {
+			// The sequential tokenizer wouldn't have looked at any of it, nor counted it.
+			return;
+		}
+		metrics.add(segment.metrics);
+		bodyWriter.text(segment.leadingText);
+		for(int i = 0; i < segment.tags.size(); i++) {
+			bodyWriter.escapedText(segment.texts.get(i));
+			bodyWriter.sanitizedTag(segment.tags.get(i), position + segment.positions[i]);
+		}
+		bodyWriter.text(segment.trailingText);
+		position += segment.length;
+		bodyEnded = segment.bodyEnded;
+		if(segment.limitReached != null) {
+			throw segment.limitReached;
+		}
+	}
+
+	// One segment of the body, tokenized, escaped, and sanitized on its own.
+	private class Segment implements Callable<Segment>, HtmlTokenizer.Handler {
+		private char[] chars;
+		final DocumentMetrics metrics = new DocumentMetrics(ParallelBodyConverter.this.metrics.timed);
+
+		// The text before the first tag and after the last one, as it is: a reference can run on into them
+		//   from the segment before, or out of them into the one after, past an empty list that's dropped.
+		String leadingText = "";
+		String trailingText;
+		// The escaped text before each tag after the first, and the sanitized tags with their positions in
+		//   the segment.
+		final List<String> texts = new ArrayList<>();
+		final List<NormalizedTag> tags = new ArrayList<>();
+		long[] positions = new long[64];
+		// The folded length of the segment, and whether the body ends in it.
+		long length;
+		boolean bodyEnded;
+		// The limit a tag of the segment reached, after the text before it; nothing after it is converted.
+		ConversionLimitException limitReached;
+
+		// The text since the previous tag, as it is, and escaped.
+		private final StringBuilder text = new StringBuilder();
+		private final StringBuilder escapedText = new StringBuilder();
+		private final EntityEscaper escaper = new EntityEscaper(rules.getEntityOutput(), false);
+		private final XhtmlTag tag = new XhtmlTag(Trace.OFF);
+
+		Segment(char[] chars) {
+			this.chars = chars;
+		}
+
+		@Override
+		public Segment call() throws IOException {
+			boolean timed = metrics.timed;
+			long start = timed ? metrics.start() : 0;
+			HtmlTokenizer tokenizer = new HtmlTokenizer(this, true);
+			tokenizer.setMaximumTagLength(maximumTagLength);
+			try {
+				tokenizer.write(chars, 0, chars.length);
+				tokenizer.endSegment();
+			} catch(ConversionLimitException e) {
+				limitReached = e;
+			}
+			if(timed) {
+				metrics.stop(ConversionMetrics.Phase.TAG_EXTRACTION, start);
+			}
+			trailingText = text.toString();
+			length = tokenizer.getPosition();
+			bodyEnded = tokenizer.isAfterBody();
+			chars = null;
+			return this;
+		}
+
+		@Override
+		public void startBody() {
+			// The segment is in the body already.
+		}
+
+		@Override
+		public void text(CharSequence text) {
+			this.text.append(text);
+		}
+
+		@Override
+		public void tag(String rawTag, long position) {
+			if(tags.isEmpty()) {
+				leadingText = text.toString();
+				texts.add("");
+			} else {
+				escaper.write(text, escapedText);
+				escaper.flush(escapedText);
+				texts.add(escapedText.toString());
+				escapedText.setLength(0);
+			}
+			text.setLength(0);
+			if(tags.size() == positions.length) {
+				positions = Arrays.copyOf(positions, positions.length * 2);
+			}
+			positions[tags.size()] = position;
+			tags.add(XhtmlBodyWriter.sanitize(rawTag, rules, tag, Trace.OFF, metrics));
+		}
+
+		@Override
+		public void end() {
+			// Segments are only ever ended with endSegment().
+		}
+	}
+}
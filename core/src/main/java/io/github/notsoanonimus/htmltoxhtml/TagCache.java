@@ -0,0 +1,159 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of sanitized tags, keyed by the raw text of the tag, which pays off for documents
+ * generated from templates, where the same few tags repeat over and over. It belongs to a TagRules table
+ * (see TagRules.setCacheSize()), and is shared by every converter using the table, on any thread.
+ *
+ * The least recently used tags are evicted first. To keep threads from waiting on each other, the cache
+ * is split into segments by the hash of the raw tag, each with its own lock and its own share of the
+ * maximum size; so the least recently used tag of a segment is evicted, which is close enough.
+ *
+ * Only tags up to MAXIMUM_TAG_LENGTH characters are cached, so the size bounds the memory the cache takes.
+ * Longer tags are rarely repeated anyway.
+ */
+public class TagCache {
+	// The longest raw tag that's cached.
+	static final int MAXIMUM_TAG_LENGTH = 2048;
+	private static final int MAXIMUM_SEGMENTS = 16;
+
+	private final int maximumSize;
+	private final Segment[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	TagCache(int maximumSize) {
+		this(maximumSize, MAXIMUM_SEGMENTS);
+	}
+
+	// A cache split into at most the given number of segments.
+	TagCache(int maximumSize, int maximumSegments) {
+		if(maximumSize < 1) {
+			throw new IllegalArgumentException("The cache size must be at least 1, not " + maximumSize + ".");
+		}
+		this.maximumSize = maximumSize;
+		segments = new Segment[Math.min(maximumSegments, maximumSize)];
+		for(int i = 0; i < segments.length; i++) {
+			// Spread the maximum size over the segments, without going over it.
+			segments[i] = new Segment(maximumSize / segments.length + (i < maximumSize % segments.length ? 1 : 0));
+		}
+	}
+
+	// The cached form of a raw tag, or null if it isn't cached.
+	NormalizedTag get(String rawTag) {
+		Segment segment = segmentOf(rawTag);
+		NormalizedTag tag;
+		synchronized(segment) {
+			tag = segment.get(rawTag);
+		}
+		(tag != null ? hits : misses).increment();
+		return tag;
+	}
+
+	// Cache the sanitized form of a raw tag, unless the tag is too long to.
+	void put(String rawTag, NormalizedTag tag) {
+		if(rawTag.length() > MAXIMUM_TAG_LENGTH) {
+			return;
+		}
+		Segment segment = segmentOf(rawTag);
+		synchronized(segment) {
+			segment.put(rawTag, tag);
+		}
+	}
+
+	/**
+	 * Drop every cached tag. The statistics are kept.
+	 */
+	public void clear() {
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * The number of tags cached right now.
+	 */
+	public int size() {
+		int size = 0;
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The number of tags that were found in the cache.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of tags that weren't found in the cache, and had to be sanitized.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * The number of tags evicted to make room for others.
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * The share of the tags that were found in the cache, between 0 and 1.
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups == 0 ? 0 : (double)hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%,d of %,d tags cached, %,d hits, %,d misses (%.1f%% hit rate), %,d evictions",
+			size(), maximumSize, getHits(), getMisses(), getHitRate() * 100, getEvictions());
+	}
+
+	private Segment segmentOf(String rawTag) {
+		int hash = rawTag.hashCode();
+		// Mix the high bits in, since the low ones of similar tags tend to be alike.
+		return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+	}
+
+	// A part of the cache, in order of access. It's never serialized.
+	@SuppressWarnings("serial")
+	private class Segment extends LinkedHashMap<String, NormalizedTag> {
+		private final int maximumSize;
+
+		Segment(int maximumSize) {
+			super(16, 0.75f, true);
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, NormalizedTag> eldest) {
+			if(size() > maximumSize) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
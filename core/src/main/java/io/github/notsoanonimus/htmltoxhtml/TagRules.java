@@ -0,0 +1,281 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * The table of rules that correct each tag of the BODY into XHTML, keyed by element and attribute name.
+ *
+ * Each raw tag is parsed exactly once: the element name is lower-cased and stripped of any namespace
+ * prefix, and then every attribute is looked up in the table and handed to its rule, if there is one.
+ * Attributes without a rule are lower-cased and quoted; minimized ones (like 'checked') are expanded
+ * when they have a rule for it and dropped otherwise. Elements registered as self-closing are always
+ * forcibly closed.
+ *
+ * The defaults merge 'style' and 'bgcolor' into a single inline style. More rules can be added before
+ * the table is handed to a converter, e.g. to turn presentational attributes into CSS:
+ *
+ *     TagRules rules = new TagRules();
+ *     rules.addAttributeRule("align", (tag, value) -> tag.addStyle("text-align:" + value));
+ *     rules.addAttributeRule("font", "color", (tag, value) -> tag.addStyle("color:" + value));
+ *
+ * A table that's no longer being changed can be shared by any number of converters, on any thread.
+ *
+ * With setCacheSize(), the table remembers how it sanitized each distinct raw tag, so a tag that's seen
+ * again (in any document) is looked up instead of parsed. The output is the same either way, provided
+ * the rules only depend on the tag they're given.
+ *
+ * Named character references, in the text and in attribute values, are written as the characters they
+ * stand for by default, or as numeric references with setEntityOutput(); they're all undefined in XHTML
+ * without its DTD, except for the five XML predefines, which are kept.
+ */
+public class TagRules {
+	/**
+	 * Corrects a single attribute of a tag, by adding whatever it becomes in XHTML to the tag.
+	 */
+	public interface AttributeRule {
+		/**
+		 * Apply the rule. The value has its quotes removed, and is null for a minimized attribute.
+		 */
+		void apply(XhtmlTag tag, String value);
+	}
+
+	/**
+	 * What named character references like "&amp;nbsp;" are written as.
+	 */
+	public enum EntityOutput {
+		/** The characters themselves, e.g. a no-break space. Needs an output charset that has them all. */
+		LITERAL,
+		/** Decimal numeric references, e.g. "&amp;#160;", which work in any output charset. */
+		NUMERIC
+	}
+
+	// Rules for an attribute on any element, and rules for an attribute on one element only, which win.
+	private final HashMap<String, AttributeRule> attributeRules = new HashMap<>();
+	private final HashMap<String, HashMap<String, AttributeRule>> elementAttributeRules = new HashMap<>();
+	private final HashSet<String> selfClosingElements = new HashSet<>();
+	private volatile EntityOutput entityOutput = EntityOutput.LITERAL;
+	// The sanitized tags, by raw tag; null when caching is off.
+	private volatile TagCache cache;
+
+	/**
+	 * Create a table with the default rules.
+	 */
+	public TagRules() {
+		for(String element : HtmlToXhtml.SELF_CLOSING_TAGS.split("\\|")) {
+			addSelfClosingElement(element);
+		}
+		for(String attribute : HtmlToXhtml.MINIMIZABLE_ATTRIBUTES.split("\\|")) {
+			// Expand minimized attributes, e.g. (checked) --> (checked="checked")
+			addAttributeRule(attribute, (tag, value) -> tag.addAttribute(attribute, value != null ? value : attribute));
+		}
+		// Collect all inline STYLE information that already exists and aggregate it
+		//   with any tag/attribute replacements, e.g. bgcolor --> background-color
+		addAttributeRule("style", (tag, value) -> {
+			if(value != null && !value.isBlank()) {
+				tag.addStyle(value);
+			}
+		});
+		// This is permissible to duplicate, but can lead to conflicting colors.
+		addAttributeRule("bgcolor", (tag, value) -> {
+			if(value != null && !value.isBlank()) {
+				tag.addStyle("background-color:" + value);
+			}
+		});
+	}
+
+	/**
+	 * Set the rule for an attribute on any element. It replaces the rule the attribute had, if any.
+	 */
+	public void addAttributeRule(String attribute, AttributeRule rule) {
+		attributeRules.put(attribute.toLowerCase(Locale.ROOT), rule);
+		clearCache();
+	}
+
+	/**
+	 * Set the rule for an attribute on one element only. It takes precedence over the attribute's rule
+	 * for any element.
+	 */
+	public void addAttributeRule(String element, String attribute, AttributeRule rule) {
+		elementAttributeRules
+			.computeIfAbsent(element.toLowerCase(Locale.ROOT), e -> new HashMap<>())
+			.put(attribute.toLowerCase(Locale.ROOT), rule);
+		clearCache();
+	}
+
+	/**
+	 * Register an element type that never has any content, so its tags are always forcibly closed.
+	 */
+	public void addSelfClosingElement(String element) {
+		selfClosingElements.add(element.toLowerCase(Locale.ROOT));
+		clearCache();
+	}
+
+	/**
+	 * Set what named character references are written as; LITERAL by default.
+	 */
+	public void setEntityOutput(EntityOutput entityOutput) {
+		this.entityOutput = entityOutput;
+		clearCache();
+	}
+
+	/**
+	 * What named character references are written as.
+	 */
+	public EntityOutput getEntityOutput() {
+		return entityOutput;
+	}
+
+	/**
+	 * Cache the sanitized form of up to the given number of distinct raw tags, evicting the least recently
+	 * used ones beyond that, or turn the cache off with 0. A new, empty cache replaces any earlier one.
+	 */
+	public void setCacheSize(int maximumSize) {
+		cache = maximumSize > 0 ? new TagCache(maximumSize) : null;
+	}
+
+	/**
+	 * The cache of sanitized tags, with its statistics, or null if caching is off.
+	 */
+	public TagCache getCache() {
+		return cache;
+	}
+
+	// Cached tags were sanitized with the old rules, which don't apply anymore.
+	private void clearCache() {
+		TagCache cache = this.cache;
+		if(cache != null) {
+			cache.clear();
+		}
+	}
+
+	// Whether the given (lower-case) element is a self-closing type.
+	boolean isSelfClosing(String element) {
+		return selfClosingElements.contains(element);
+	}
+
+	/**
+	 * Sanitize a single raw tag (as found by the tokenizer) into its final XHTML form, using the given tag
+	 * to build it up. Returns INVALID if the tag should be dropped.
+	 */
+	NormalizedTag normalize(String rawTag, XhtmlTag tag) {
+		if(!correct(rawTag, tag)) {
+			return NormalizedTag.INVALID;
+		}
+		String element = tag.getElement();
+		boolean closing = tag.isClosing();
+		// Only opening tags are forcibly closed.
+		boolean selfClosing = !closing && isSelfClosing(element);
+		return new NormalizedTag(EntityEscaper.escapeTag(tag.toXhtml(selfClosing), entityOutput),
+			element, closing, selfClosing, tag.hasMergedStyle());
+	}
+
+	/**
+	 * Break apart the attributes of a single raw tag (as found by the tokenizer) and correct them into
+	 * the given tag. Returns false if the tag is invalid and should be dropped.
+	 */
+	boolean correct(String rawTag, XhtmlTag tag) {
+		// Everything up to the closing angle bracket. If (for some reason) any whitespace precedes
+		//   the element name, skip it.
+		int end = rawTag.length() - 1;
+		int i = skipWhitespace(rawTag, 1, end);
+		boolean isClosingTag = i < end && rawTag.charAt(i) == '/';
+		if(isClosingTag) {
+			i++;
+		}
+		int nameStart = i;
+		i = skipWordChars(rawTag, i, end);
+		// Remove any tag namespace prefix, e.g. (o:p) --> (p)
+		if(i > nameStart && i < end && rawTag.charAt(i) == ':') {
+			nameStart = i + 1;
+			i = skipWordChars(rawTag, nameStart, end);
+		}
+		// If the element type wasn't found (meaning invalid tag), drop the tag.
+		if(i == nameStart) {
+			return false;
+		}
+		String element = rawTag.substring(nameStart, i).toLowerCase(Locale.ROOT);
+		tag.reset(element, isClosingTag);
+		if(isClosingTag) {
+			return true;
+		}
+		// Anything else stuck onto the element type isn't part of it.
+		while(i < end && !HtmlTokenizer.isWhitespace(rawTag.charAt(i))) {
+			i++;
+		}
+
+		HashMap<String, AttributeRule> elementRules = elementAttributeRules.get(element);
+		while(i < end) {
+			// Skip over whitespace and stray characters, like a slash that already closes the tag.
+			if(!isAttributeNameChar(rawTag.charAt(i))) {
+				i++;
+				continue;
+			}
+			int attributeStart = i;
+			i = skipAttributeNameChars(rawTag, i, end);
+			String attribute = rawTag.substring(attributeStart, i).toLowerCase(Locale.ROOT);
+			String value = null;
+			char quote = '"';
+			int valueStart = skipWhitespace(rawTag, i, end);
+			if(valueStart < end && rawTag.charAt(valueStart) == '=') {
+				valueStart = skipWhitespace(rawTag, valueStart + 1, end);
+				if(valueStart < end && (rawTag.charAt(valueStart) == '"' || rawTag.charAt(valueStart) == '\'')) {
+					// Quoted value, which runs to the matching quote (or the end of the tag, if there isn't one).
+					quote = rawTag.charAt(valueStart);
+					int valueEnd = rawTag.indexOf(quote, valueStart + 1);
+					if(valueEnd < 0) {
+						valueEnd = end;
+					}
+					value = rawTag.substring(valueStart + 1, valueEnd);
+					i = Math.min(valueEnd + 1, end);
+				} else {
+					// Quote unquoted attribute values, e.g. (class=test) --> (class="test")
+					i = valueStart;
+					while(i < end && !HtmlTokenizer.isWhitespace(rawTag.charAt(i))) {
+						i++;
+					}
+					value = rawTag.substring(valueStart, i);
+				}
+			}
+
+			AttributeRule rule = elementRules != null ? elementRules.get(attribute) : null;
+			if(rule == null) {
+				rule = attributeRules.get(attribute);
+			}
+			if(rule != null) {
+				rule.apply(tag, value);
+			} else if(value != null) {
+				tag.addAttribute(attribute, value, quote);
+			}
+			// Any other minimized attribute has no XHTML form, so it's dropped.
+		}
+		return true;
+	}
+
+	private static int skipWhitespace(String tag, int i, int end) {
+		while(i < end && HtmlTokenizer.isWhitespace(tag.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipWordChars(String tag, int i, int end) {
+		while(i < end && HtmlTokenizer.isWordChar(tag.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipAttributeNameChars(String tag, int i, int end) {
+		while(i < end && isAttributeNameChar(tag.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	// Attribute names are word characters, plus the hyphens, colons, and dots of names like 'data-id' or 'xml:lang'.
+	private static boolean isAttributeNameChar(char c) {
+		return HtmlTokenizer.isWordChar(c) || c == '-' || c == ':' || c == '.';
+	}
+}
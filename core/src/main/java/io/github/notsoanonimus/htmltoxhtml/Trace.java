@@ -0,0 +1,255 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Tracing of what the converter does with each tag, for debugging a bad conversion.
+ *
+ * Every phase of the conversion has its own trace level, and everything is OFF by default. Callers check
+ * isEnabled() before building an event, so a disabled trace costs a single comparison per tag and never
+ * builds a String. Enabled events go to a Sink, never into the XHTML itself; jsonLines() gives a sink that
+ * writes one JSON object per event, e.g. to standard error or a file.
+ *
+ * A Trace is immutable, so the same one can be handed to any number of converters, on any thread.
+ */
+public class Trace {
+	/**
+	 * The phases of the conversion that can be traced.
+	 */
+	public enum Phase {
+		// Raw tags as they come out of the tokenizer.
+		TOKENIZER,
+		// Tags and their attributes as they're corrected by the tag rules.
+		SANITIZER,
+		// Tags as they're fitted into the nesting of the document.
+		NESTING
+	}
+
+	/**
+	 * How much to trace about a phase.
+	 */
+	public enum Level {
+		OFF,
+		// An event per tag, or per repair.
+		BASIC,
+		// Everything, e.g. an event per attribute.
+		DETAIL
+	}
+
+	/**
+	 * Receives the events of an enabled trace. Sinks can be called from several threads at once.
+	 */
+	public interface Sink {
+		void event(Event event);
+	}
+
+	/**
+	 * A single traced event.
+	 */
+	public static class Event {
+		private final Phase phase;
+		private final String name;
+		private final String document;
+		private final long position;
+		private final Object[] fields;
+
+		Event(Phase phase, String name, String document, long position, Object[] fields) {
+			this.phase = phase;
+			this.name = name;
+			this.document = document;
+			this.position = position;
+			this.fields = fields;
+		}
+
+		public Phase getPhase() {
+			return phase;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * The name of the document being converted, or null if it wasn't given one.
+		 */
+		public String getDocument() {
+			return document;
+		}
+
+		/**
+		 * The position in the raw HTML the event is about, or -1 if it isn't about one.
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		/**
+		 * The value of the given field of the event, or null if it doesn't have that field.
+		 */
+		public Object get(String field) {
+			for(int i = 0; i + 1 < fields.length; i += 2) {
+				if(fields[i].equals(field)) {
+					return fields[i + 1];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * The event as a single-line JSON object.
+		 */
+		public String toJson() {
+			StringBuilder json = new StringBuilder("{\"phase\":\"").append(phase.name().toLowerCase(Locale.ROOT))
+				.append("\",\"event\":");
+			appendJsonString(json, name);
+			if(document != null) {
+				json.append(",\"document\":");
+				appendJsonString(json, document);
+			}
+			if(position >= 0) {
+				json.append(",\"position\":").append(position);
+			}
+			for(int i = 0; i + 1 < fields.length; i += 2) {
+				json.append(',');
+				appendJsonString(json, String.valueOf(fields[i]));
+				json.append(':');
+				if(fields[i + 1] instanceof Number || fields[i + 1] instanceof Boolean) {
+					json.append(fields[i + 1]);
+				} else {
+					appendJsonString(json, String.valueOf(fields[i + 1]));
+				}
+			}
+			return json.append('}').toString();
+		}
+
+		@Override
+		public String toString() {
+			return toJson();
+		}
+
+		private static void appendJsonString(StringBuilder json, String value) {
+			json.append('"');
+			for(int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if(c == '"' || c == '\\') {
+					json.append('\\').append(c);
+				} else if(c < 0x20) {
+					json.append(String.format("\\u%04x", (int)c));
+				} else {
+					json.append(c);
+				}
+			}
+			json.append('"');
+		}
+	}
+
+	/**
+	 * The trace that traces nothing.
+	 */
+	public static final Trace OFF = new Trace(null);
+
+	private final Sink sink;
+	private final int[] levels;
+	private final String document;
+
+	/**
+	 * Create a trace sending its events to the given sink, with every phase still OFF.
+	 */
+	public Trace(Sink sink) {
+		this(sink, new int[Phase.values().length], null);
+	}
+
+	private Trace(Sink sink, int[] levels, String document) {
+		this.sink = sink;
+		this.levels = levels;
+		this.document = document;
+	}
+
+	/**
+	 * A sink writing each event to the given stream as a line of JSON.
+	 */
+	public static Sink jsonLines(PrintStream out) {
+		return event -> out.println(event.toJson());
+	}
+
+	/**
+	 * A copy of this trace, tracing the given phase at the given level.
+	 */
+	public Trace withLevel(Phase phase, Level level) {
+		if(sink == null && level != Level.OFF) {
+			throw new IllegalStateException("The OFF trace has nowhere to send any events.");
+		}
+		int[] newLevels = Arrays.copyOf(levels, levels.length);
+		newLevels[phase.ordinal()] = level.ordinal();
+		return new Trace(sink, newLevels, document);
+	}
+
+	/**
+	 * A copy of this trace with the levels from a specification like "nesting=detail,sanitizer", where
+	 * a phase without a level is traced at BASIC, and "all" stands for every phase.
+	 */
+	public Trace withLevels(String specification) {
+		Trace trace = this;
+		for(String item : specification.split(",")) {
+			String[] phaseAndLevel = item.trim().split("=", 2);
+			if(phaseAndLevel[0].isEmpty()) {
+				continue;
+			}
+			Level level = phaseAndLevel.length > 1
+				? parse(Level.class, phaseAndLevel[1]) : Level.BASIC;
+			if(phaseAndLevel[0].equalsIgnoreCase("all")) {
+				for(Phase phase : Phase.values()) {
+					trace = trace.withLevel(phase, level);
+				}
+			} else {
+				trace = trace.withLevel(parse(Phase.class, phaseAndLevel[0]), level);
+			}
+		}
+		return trace;
+	}
+
+	/**
+	 * A copy of this trace that names the given document in all of its events.
+	 */
+	public Trace forDocument(String document) {
+		return sink == null ? this : new Trace(sink, levels, document);
+	}
+
+	/**
+	 * Whether events of the given phase and level are traced. Check this before building an event.
+	 */
+	public boolean isEnabled(Phase phase, Level level) {
+		return levels[phase.ordinal()] >= level.ordinal() && level != Level.OFF;
+	}
+
+	// Whether any phase is traced at all.
+	boolean isEnabled() {
+		for(Phase phase : Phase.values()) {
+			if(isEnabled(phase, Level.BASIC)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Send an event to the sink, if its phase is traced at the given level. The fields are given as
+	 * alternating names and values.
+	 */
+	public void event(Phase phase, Level level, String name, long position, Object... fields) {
+		if(isEnabled(phase, level)) {
+			sink.event(new Event(phase, name, document, position, fields));
+		}
+	}
+
+	private static <E extends Enum<E>> E parse(Class<E> type, String name) {
+		try {
+			return Enum.valueOf(type, name.trim().toUpperCase(Locale.ROOT));
+		} catch(IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown trace " + type.getSimpleName().toLowerCase(Locale.ROOT)
+				+ " '" + name.trim() + "'; expected one of " + Arrays.toString(type.getEnumConstants()).toLowerCase(Locale.ROOT) + ".");
+		}
+	}
+}
@@ -0,0 +1,403 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Consumes the tokenizer's events for the body of an HTML document and writes the pretty-printed
+ * XHTML, and the minimized XHTML if it's wanted, as the events stream through.
+ *
+ * Each tag is sanitized on its own, and then the tag nesting is repaired using a stack of the
+ * currently-open elements. A tag's output is written as soon as the tag is seen, so apart from that
+ * stack only the text since the previous tag is ever held in memory.
+ */
+class XhtmlBodyWriter implements HtmlTokenizer.Handler {
+	// Where the finished XHTML goes, pretty-printed and minimized.
+	private final XhtmlEmitter finalXhtml;
+
+	// Whether the document has a body at all.
+	private boolean bodyFound = false;
+
+	// The text seen since the previous tag, i.e. the "between-tags" content of the next tag, already
+	//   escaped as it came in.
+	private final StringBuilder tagContents = new StringBuilder();
+	private final EntityEscaper textEscaper;
+
+	// The rules each tag is corrected with, and the tag currently being corrected.
+	private final TagRules rules;
+	private final XhtmlTag currentTag;
+
+	// Where the events of the tokenizer, sanitizer, and nesting phases are traced.
+	private final Trace trace;
+
+	// What's been sanitized and repaired so far, and how long it took.
+	private final DocumentMetrics metrics;
+
+	// The element ids of this document, the two that get inserted to repair lists, and line breaks.
+	private final ElementTable elements;
+	private final int UL;
+	private final int LI;
+	private final int BR;
+
+	// Set up a tagStack as a stack of element ids to track opening tags,
+	//     which are popped as the corresponding closing tags are encountered.
+	//     How many of each element are open is tracked alongside, so a stray closing tag costs nothing.
+	private int[] tagStack = new int[32];
+	private int stackSize = 0;
+	private int[] openCounts;
+
+	// Spacing StringBuilder to control a little bit of pretty-printing.
+	//   It starts with an initial spacing because this content is nested inside of the <body> tag anyhow.
+	private final StringBuilder contentIndent = new StringBuilder("  ");
+
+	// The most tags, and the deepest nesting, the document may have, and the tags it's had so far.
+	private long maximumTags = Long.MAX_VALUE;
+	private int maximumDepth = Integer.MAX_VALUE;
+	private long tags = 0;
+
+	XhtmlBodyWriter(XhtmlEmitter finalXhtml, TagRules rules, Trace trace, DocumentMetrics metrics) {
+		this.finalXhtml = finalXhtml;
+		this.rules = rules;
+		this.trace = trace;
+		this.metrics = metrics;
+		this.currentTag = new XhtmlTag(trace);
+		this.textEscaper = new EntityEscaper(rules.getEntityOutput(), false);
+		this.elements = new ElementTable();
+		this.UL = elements.intern("ul");
+		this.LI = elements.intern("li");
+		this.BR = elements.intern("br");
+		this.openCounts = new int[elements.size()];
+	}
+
+	// Take the number of tags and the depth from the given limits. A tag beyond either one fails with a
+	//   ConversionLimitException before it changes anything, so the document can still be ended.
+	void setLimits(ConversionLimits limits) {
+		maximumTags = limits.getMaximumTags();
+		maximumDepth = limits.getMaximumDepth();
+	}
+
+	@Override
+	public void startBody() {
+		bodyFound = true;
+	}
+
+	@Override
+	public void text(CharSequence text) {
+		textEscaper.write(text, tagContents);
+	}
+
+	@Override
+	public void tag(String tag, long position) throws IOException {
+		correctTag(tag, position);
+	}
+
+	// Text that's already been escaped, by a segment of the body converted in parallel. It always comes
+	//   after a tag, so no reference can be running on into it.
+	void escapedText(CharSequence text) {
+		tagContents.append(text);
+	}
+
+	// A tag that's already been sanitized, by a segment of the body converted in parallel; an invalid
+	//   one drops the text before it, as it would have been.
+	void sanitizedTag(NormalizedTag normalizedTag, long pos) throws IOException {
+		textEscaper.flush(tagContents);
+		countTag();
+		if(normalizedTag == NormalizedTag.INVALID) {
+			tagContents.setLength(0);
+			return;
+		}
+		repairTimedTag(normalizedTag, pos);
+	}
+
+	@Override
+	public void end() throws IOException {
+		if(!bodyFound) {
+			// Return some default "error" text. Shouldn't ever happen.
+			finalXhtml.content("<p>Unable to convert this document to XHTML.</p>");
+			return;
+		}
+
+		// Add on the trailing text that doesn't have tags.
+		textEscaper.flush(tagContents);
+		String trailingText = tagContents.toString();
+		tagContents.setLength(0);
+		finalXhtml.layout(contentIndent);
+		finalXhtml.content(trailingText);
+
+		// Go through the tags remaining on the stack and close them sequentially.
+		//     These will be added AFTER the trailing text above.
+		while(stackSize > 0) {
+			unindent();
+			finalXhtml.layout(contentIndent);
+			finalXhtml.content("</" + elements.name(pop()) + ">");
+			metrics.increment(ConversionMetrics.Counter.UNCLOSED_ELEMENTS);
+		}
+	}
+
+	// Correct a single tag, then fit it (and the content before it) into the nesting of the document.
+	private void correctTag(String rawTag, long pos) throws IOException {
+		// A reference can't run on into a tag.
+		textEscaper.flush(tagContents);
+		countTag();
+		if(trace.isEnabled(Trace.Phase.TOKENIZER, Trace.Level.BASIC)) {
+			trace.event(Trace.Phase.TOKENIZER, Trace.Level.BASIC, "tag", pos, "tag", rawTag);
+		}
+		NormalizedTag normalizedTag = sanitize(rawTag, rules, currentTag, trace, metrics);
+		if(normalizedTag == NormalizedTag.INVALID) {
+			// Invalid tag: it's dropped along with its content.
+			if(trace.isEnabled(Trace.Phase.SANITIZER, Trace.Level.BASIC)) {
+				trace.event(Trace.Phase.SANITIZER, Trace.Level.BASIC, "drop", pos, "tag", rawTag, "contents", tagContents.toString());
+			}
+			tagContents.setLength(0);
+			return;
+		}
+		repairTimedTag(normalizedTag, pos);
+	}
+
+	// Count a tag against the limit.
+	private void countTag() throws ConversionLimitException {
+		if(++tags > maximumTags) {
+			throw new ConversionLimitException(ConversionLimits.Limit.TAGS, maximumTags);
+		}
+	}
+
+	// Sanitize a raw tag with the given rules, counting and timing it in the given metrics.
+	static NormalizedTag sanitize(String rawTag, TagRules rules, XhtmlTag tag, Trace trace, DocumentMetrics metrics) {
+		metrics.increment(ConversionMetrics.Counter.TAGS);
+		boolean timed = metrics.timed;
+		long start = timed ? metrics.start() : 0;
+		NormalizedTag normalizedTag = normalize(rawTag, rules, tag, trace, metrics);
+		if(timed) {
+			metrics.stop(ConversionMetrics.Phase.SANITIZATION, start);
+		}
+		if(normalizedTag == NormalizedTag.INVALID) {
+			metrics.increment(ConversionMetrics.Counter.DROPPED_TAGS);
+		}
+		return normalizedTag;
+	}
+
+	// Sanitize a raw tag, or look it up in the rules' cache. Tracing the attributes of every tag means
+	//   sanitizing every tag, so the cache is passed by then, and so it is for tags too long to be cached.
+	private static NormalizedTag normalize(String rawTag, TagRules rules, XhtmlTag tag, Trace trace, DocumentMetrics metrics) {
+		TagCache cache = rules.getCache();
+		if(cache == null || rawTag.length() > TagCache.MAXIMUM_TAG_LENGTH
+				|| trace.isEnabled(Trace.Phase.SANITIZER, Trace.Level.DETAIL)) {
+			return rules.normalize(rawTag, tag);
+		}
+		NormalizedTag normalizedTag = cache.get(rawTag);
+		if(normalizedTag != null) {
+			metrics.increment(ConversionMetrics.Counter.TAG_CACHE_HITS);
+			return normalizedTag;
+		}
+		metrics.increment(ConversionMetrics.Counter.TAG_CACHE_MISSES);
+		normalizedTag = rules.normalize(rawTag, tag);
+		cache.put(rawTag, normalizedTag);
+		return normalizedTag;
+	}
+
+	// Fit a sanitized tag into the nesting, timing it as the nesting phase.
+	private void repairTimedTag(NormalizedTag normalizedTag, long pos) throws IOException {
+		boolean timed = metrics.timed;
+		long start = timed ? metrics.start() : 0;
+		repairTag(normalizedTag, pos);
+		if(timed) {
+			metrics.stop(ConversionMetrics.Phase.NESTING, start);
+		}
+	}
+
+	// Fit an already-sanitized tag (and the content before it) into the nesting of the document.
+	void repairTag(NormalizedTag normalizedTag, long pos) throws IOException {
+		// Closing tags for elements that were never opened aren't interned; they can't close anything.
+		boolean isClosingTag = normalizedTag.closing;
+		String elementName = normalizedTag.element;
+		int element = isClosingTag ? elements.find(elementName) : elements.intern(elementName);
+		// Check if this is a self-closing tag.
+		boolean isSelfClosing = normalizedTag.selfClosing;
+		// An opening tag goes on the stack, along with the list or list item it may need around it.
+		if(!isClosingTag && !isSelfClosing && stackSize + (listWrapper(element) >= 0 ? 2 : 1) > maximumDepth) {
+			throw new ConversionLimitException(ConversionLimits.Limit.DEPTH, maximumDepth);
+		}
+		if(isSelfClosing) {
+			metrics.increment(ConversionMetrics.Counter.SELF_CLOSED_ELEMENTS);
+		}
+		if(normalizedTag.mergedStyle) {
+			metrics.increment(ConversionMetrics.Counter.MERGED_STYLES);
+		}
+		String tag = normalizedTag.xhtml;
+		if(trace.isEnabled(Trace.Phase.SANITIZER, Trace.Level.BASIC)) {
+			trace.event(Trace.Phase.SANITIZER, Trace.Level.BASIC, "tag", pos, "tag", tag);
+		}
+
+		String contents = tagContents.toString();
+		tagContents.setLength(0);
+		// Add a non-breaking space behind the line-break to force their acknowledgement.
+		if(element == BR && !isClosingTag) {
+			contents = contents + "&#160;";
+		}
+
+		repairNesting(tag, contents, elementName, element, isClosingTag, isSelfClosing, pos);
+	}
+
+	// Track the DOM nesting level, inserting closing tags as needed.
+	//   This section will collapse a section where there are mismatched tags and rearrange
+	//   the nesting appropriately to create valid tag layering.
+	private void repairNesting(String tag, String contents, String elementName, int element,
+			boolean isClosingTag, boolean isSelfClosing, long pos) throws IOException {
+		StringBuilder modifiedTag = new StringBuilder();
+
+		// Take an action based on the type of tag being parsed.
+		if(!isClosingTag && !isSelfClosing) {
+			// Tag is an "opening" tag but isn't self-terminating; add it to the stack.
+			//   If it's an LI tag, check the outer wrapping tag to make sure it's not an orphan.
+			int wrapper = listWrapper(element);
+			if(wrapper >= 0) {
+				String wrapperName = elements.name(wrapper);
+				push(wrapper);
+				modifiedTag.append('<').append(wrapperName).append('>');
+				traceInsert(wrapperName, elementName, pos);
+			}
+			push(element);
+			// ... and also add it to the final tag output (without any modification) for the XHTML.
+			modifiedTag.append(tag);
+		} else if(isClosingTag && element >= 0 && element < openCounts.length && openCounts[element] > 0) {
+			// The element is open somewhere in the stack. Only the topmost one is closed when there are
+			//   several of the same type in the stack. If it's further down than the stack's top, there are
+			//   other tags further up the stack: close them in a cascading manner, from the top down.
+			int closedCount = 0;
+			while(tagStack[stackSize - 1] != element) {
+				// Append the closing form of the tag from the top of the stack.
+				modifiedTag.append("</" + elements.name(pop()) + ">");
+				closedCount++;
+				// Control the StringBuilder for indentation.
+				unindent();
+			}
+			// Finally, pop the matched element and append the actual closing tag being examined.
+			pop();
+			modifiedTag.append(tag);
+			metrics.add(ConversionMetrics.Counter.CASCADED_CLOSES, closedCount);
+			if(trace.isEnabled(Trace.Phase.NESTING, Trace.Level.BASIC)) {
+				trace.event(Trace.Phase.NESTING, Trace.Level.BASIC, "close", pos,
+					"element", elementName, "stackPosition", closedCount + 1, "cascaded", closedCount);
+			}
+		} else if(isSelfClosing) {
+			// The tag closes itself, no stack-based operation is needed. Append to final output.
+			modifiedTag.append(tag);
+		}
+		// If the closing tag for this element isn't on the stack, nothing is appended at all.
+
+		// Pretty-print attempt, delete the indentation BEFORE outputting the closing tag.
+		if(!isSelfClosing && isClosingTag && modifiedTag.length() > 0) {
+			unindent();
+		}
+
+		if(modifiedTag.length() == 0) {
+			metrics.increment(ConversionMetrics.Counter.DROPPED_CLOSING_TAGS);
+			if(trace.isEnabled(Trace.Phase.NESTING, Trace.Level.BASIC)) {
+				trace.event(Trace.Phase.NESTING, Trace.Level.BASIC, "unmatched", pos, "tag", tag, "contents", contents);
+			}
+		} else if(trace.isEnabled(Trace.Phase.NESTING, Trace.Level.DETAIL)) {
+			trace.event(Trace.Phase.NESTING, Trace.Level.DETAIL, "tag", pos,
+				"tag", tag, "contents", contents, "output", modifiedTag.toString(), "depth", stackSize);
+		}
+
+		// Add the new content onto the final XHTML body, provided the final element
+		//     is not just a whitespace item (which only the minimized output keeps, as a space).
+		if(modifiedTag.length() > 0) {
+			if(isWhitespace(contents)) {
+				finalXhtml.whitespace(contents);
+			} else if(isClosingTag ? elements.is(element, ElementTable.LIST) : elements.is(element, ElementTable.LIST_ITEM)) {
+				// If this was a LIST item opening, or a List TAG >>CLOSING<<,
+				//   check the tagContents for intermediate content. If some exists,
+				//   wrap it in LI tags as well.
+				contentLayout();
+				finalXhtml.content("<li>" + contents + "</li>");
+				metrics.increment(ConversionMetrics.Counter.INSERTED_LIST_ITEMS);
+				if(trace.isEnabled(Trace.Phase.NESTING, Trace.Level.BASIC)) {
+					trace.event(Trace.Phase.NESTING, Trace.Level.BASIC, "wrap", pos, "element", "li", "contents", contents);
+				}
+			} else {
+				// Since the tagContents actually has something in it, add it w/o modification.
+				contentLayout();
+				finalXhtml.content(contents);
+			}
+			finalXhtml.layout(contentIndent);
+			finalXhtml.content(modifiedTag.toString());
+		}
+		// Pretty-print attempt, add the indentation AFTER outputting the opening tag.
+		if(!isSelfClosing && !isClosingTag && modifiedTag.length() > 0) {
+			contentIndent.append("  ");
+		}
+	}
+
+	// Take a level off the indentation. It's all spaces, so it comes off the end, however deep it is.
+	private void unindent() {
+		if(contentIndent.length() >= 2) {
+			contentIndent.setLength(contentIndent.length() - 2);
+		}
+	}
+
+	// Start a new line for the content before a tag, a level deeper than the tag itself.
+	private void contentLayout() throws IOException {
+		contentIndent.append("  ");
+		finalXhtml.layout(contentIndent);
+		contentIndent.setLength(contentIndent.length() - 2);
+	}
+
+	// The element that has to be opened around the given opening element to fit it into a list, or -1.
+	private int listWrapper(int element) {
+		boolean isListItem = elements.is(element, ElementTable.LIST_ITEM);
+		if(stackSize > 0) {
+			boolean isInList = elements.is(tagStack[stackSize - 1], ElementTable.LIST);
+			if(isListItem && !isInList) {
+				// If the LI tag isn't wrapped by one of the two list types, assume an UL wrapper.
+				//   This seems to be most HTML clients' default behavior.
+				return UL;
+			} else if(!isListItem && isInList) {
+				// If the parent tag is an UL or OL element, but the next opening tag in line
+				//   isn't, add an LI tag in the middle by force. It will be auto-closed later.
+				return LI;
+			}
+		} else if(isListItem) {
+			// Cases where LI is encountered at the root of a document.
+			return UL;
+		}
+		return -1;
+	}
+
+	// Count and trace the insertion of an element that's needed to fit the given element into a list.
+	private void traceInsert(String inserted, String elementName, long pos) {
+		metrics.increment(inserted.equals("ul") ? ConversionMetrics.Counter.INSERTED_LISTS : ConversionMetrics.Counter.INSERTED_LIST_ITEMS);
+		if(trace.isEnabled(Trace.Phase.NESTING, Trace.Level.BASIC)) {
+			trace.event(Trace.Phase.NESTING, Trace.Level.BASIC, "insert", pos, "element", inserted, "before", elementName);
+		}
+	}
+
+	// Push an element onto the stack of open elements.
+	private void push(int element) {
+		if(stackSize == tagStack.length) {
+			tagStack = Arrays.copyOf(tagStack, stackSize * 2);
+		}
+		tagStack[stackSize++] = element;
+		if(element >= openCounts.length) {
+			openCounts = Arrays.copyOf(openCounts, Math.max(elements.size(), openCounts.length * 2));
+		}
+		openCounts[element]++;
+	}
+
+	// Pop the topmost element off the stack of open elements.
+	private int pop() {
+		int element = tagStack[--stackSize];
+		openCounts[element]--;
+		return element;
+	}
+
+	// Whether the content is empty, or nothing but whitespace.
+	private static boolean isWhitespace(String contents) {
+		for(int i = 0; i < contents.length(); i++) {
+			if(!HtmlTokenizer.isWhitespace(contents.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
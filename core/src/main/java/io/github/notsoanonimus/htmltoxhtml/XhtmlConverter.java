@@ -0,0 +1,537 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts one HTML document to a complete XHTML document, incrementally.
+ *
+ * The raw document is pushed in with feed() one chunk at a time as it becomes available, e.g. as it
+ * arrives over the network, and finish() is called once it's all there. Chunks can be split anywhere:
+ * in the middle of a tag, an attribute value, an entity, or even a multi-byte character. The XHTML is
+ * written out as soon as each tag's place in the nesting is resolved, and the Writers are flushed after
+ * every chunk so that it never waits on the rest of the document.
+ *
+ * Nothing but the HEAD content, the stack of open elements, and the text since the previous tag is
+ * kept around, so memory use depends on how deeply the document is nested rather than on how large
+ * it is. A converter handles exactly one document, and isn't safe to feed from several threads.
+ *
+ * Every converter counts what it reads, writes, and repairs; getMetrics() has the numbers. The time
+ * spent in each phase is only measured when phase timings are turned on, or when the conversion
+ * event is enabled in a Flight Recorder recording.
+ *
+ * The BODY of a large document can be converted on several threads at once with setParallelPool(),
+ * with the same result; see ParallelBodyConverter. A document that can't be trusted can be held to
+ * limits on its size, time, and structure with setLimits(); see ConversionLimits.
+ */
+public class XhtmlConverter {
+	private static final String HEAD_OPENING_TAG = "<head>";
+	private static final String HEAD_CLOSING_TAG = "</head>";
+
+	// Head capture states.
+	private static final int BEFORE_HEAD = 0;
+	private static final int IN_HEAD = 1;
+	private static final int AFTER_HEAD = 2;
+
+	// The rules used when none are given. Never handed out, so they can't be changed.
+	static final TagRules DEFAULT_RULES = new TagRules();
+
+	/**
+	 * The size, in bytes, from which a document is worth converting in parallel. Below it, handing the
+	 * segments of the body around costs more than the threads save.
+	 */
+	public static final long PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+	// How many characters are converted between two checks of the time and size limits.
+	private static final int LIMIT_CHECK_INTERVAL = 8192;
+
+	private final XhtmlEmitter out;
+	private final DocumentHandler documentHandler = new DocumentHandler();
+	private final HtmlTokenizer tokenizer;
+	private final DocumentMetrics metrics;
+	private final ConversionEvent event = new ConversionEvent();
+	private final TagRules rules;
+	private final Trace trace;
+	private final XhtmlBodyWriter bodyWriter;
+	// The pool to convert the body on in parallel, if any, and what converts it there, once the tokenizer
+	//   has reached a place in it to hand it over; null when the body is converted right here.
+	private ForkJoinPool parallelPool;
+	private ParallelBodyConverter parallelBody;
+
+	// The limits of the document, if any, its time limit, and when its time is up, in System.nanoTime().
+	private ConversionLimits limits;
+	private Duration maximumTime;
+	private long deadline;
+	// Whether the document has been cut short at a limit, so that the rest of it is ignored.
+	private boolean truncated = false;
+
+	// Decoding of byte chunks, including the bytes of a character that's split across two of them.
+	private final CharsetDecoder decoder;
+	private final CharBuffer decoded = CharBuffer.allocate(8192);
+	private final ByteBuffer undecoded = ByteBuffer.allocate(16);
+	// Whether finish() has been called.
+	private boolean finished = false;
+
+	// The raw content of the HEAD element, and how much of its opening or closing tag has been matched.
+	private final StringBuilder headContent = new StringBuilder();
+	private final StringBuilder headTag = new StringBuilder();
+	private int headState = BEFORE_HEAD;
+	private boolean headFound = false;
+	// Whether the XML declaration, DOCTYPE, and HEAD have been written yet.
+	private boolean headWritten = false;
+	// Whether the tokenizer has found the BODY.
+	private boolean bodyStarted = false;
+
+	/**
+	 * Create a converter writing its XHTML to the given Writer. Byte chunks are decoded as UTF-8.
+	 */
+	public XhtmlConverter(Writer out) {
+		this(out, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Create a converter writing its XHTML to the given Writer, decoding byte chunks with the given charset.
+	 * Malformed input is replaced rather than rejected, like a browser would.
+	 */
+	public XhtmlConverter(Writer out, Charset charset) {
+		this(out, charset, DEFAULT_RULES);
+	}
+
+	/**
+	 * Create a converter writing its XHTML to the given Writer, decoding byte chunks with the given charset
+	 * and correcting the tags of the BODY with the given rules.
+	 */
+	public XhtmlConverter(Writer out, Charset charset, TagRules rules) {
+		this(out, charset, rules, Trace.OFF);
+	}
+
+	/**
+	 * Create a converter writing its XHTML to the given Writer, decoding byte chunks with the given charset
+	 * and correcting the tags of the BODY with the given rules. What happens to each tag is traced to
+	 * the given trace, as far as it's enabled.
+	 */
+	public XhtmlConverter(Writer out, Charset charset, TagRules rules, Trace trace) {
+		this(out, null, charset, rules, trace);
+	}
+
+	/**
+	 * Create a converter writing its XHTML to the given Writer, and the minimized XHTML to the other one
+	 * at the same time, if it isn't null. Byte chunks are decoded with the given charset, the tags of the
+	 * BODY are corrected with the given rules, and what happens to each tag is traced to the given trace,
+	 * as far as it's enabled.
+	 *
+	 * The minimized XHTML has none of the line breaks and indentation of the pretty-printed layout, but
+	 * keeps all of the document's own text, so it renders the same: whitespace next to an inline tag, as
+	 * in "&lt;/b&gt; and a half", is still there, and whitespace between two tags is a single space.
+	 */
+	public XhtmlConverter(Writer out, Writer minimizedOut, Charset charset, TagRules rules, Trace trace) {
+		this(out, minimizedOut, charset, rules, trace, new DocumentMetrics(false));
+	}
+
+	// Create a converter keeping its metrics in the given ones.
+	XhtmlConverter(Writer out, Writer minimizedOut, Charset charset, TagRules rules, Trace trace, DocumentMetrics metrics) {
+		this.metrics = metrics;
+		this.out = new XhtmlEmitter(out, minimizedOut, metrics);
+		this.tokenizer = new HtmlTokenizer(documentHandler);
+		this.rules = rules;
+		this.trace = trace;
+		this.bodyWriter = new XhtmlBodyWriter(this.out, rules, trace, metrics);
+		this.decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		if(event.isEnabled()) {
+			metrics.timed = true;
+		}
+		event.begin();
+	}
+
+	/**
+	 * Turn the timing of each phase of the conversion on or off. It's off by default, since looking at
+	 * the clock for every tag adds up; phases are only timed for as long as it's on.
+	 */
+	public void setPhaseTimings(boolean enabled) {
+		metrics.timed = enabled;
+	}
+
+	/**
+	 * Convert the BODY on the given pool, in segments that are tokenized and sanitized in parallel, and
+	 * only put together on the thread feeding the document. The output is exactly the same either way,
+	 * but it's only worth it for documents of PARALLEL_THRESHOLD and more. Ignored while the document is
+	 * traced, since the events of the segments would be out of order; must be called before the first
+	 * chunk is fed.
+	 */
+	public void setParallelPool(ForkJoinPool pool) {
+		if(trace.isEnabled()) {
+			return;
+		}
+		parallelPool = pool;
+	}
+
+	// Convert the body in parallel on the common pool, if a document of the given size is large enough
+	//   for it, and there's more than one processor to do it on.
+	void setParallelPool(long size) {
+		if(size >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+			setParallelPool(ForkJoinPool.commonPool());
+		}
+	}
+
+	/**
+	 * Hold the document to the given limits. Its time starts now; must be called before the first chunk
+	 * is fed. When the document reaches one of them, feeding or finishing it throws a
+	 * ConversionLimitException, or, if the limits truncate, the rest of it is ignored, and finish() ends
+	 * the XHTML right where it was cut short.
+	 */
+	public void setLimits(ConversionLimits limits) {
+		this.limits = limits;
+		maximumTime = limits.getMaximumTime();
+		if(maximumTime != null) {
+			deadline = System.nanoTime() + maximumTime.toNanos();
+		}
+		tokenizer.setMaximumTagLength(limits.getMaximumTagLength());
+		bodyWriter.setLimits(limits);
+	}
+
+	/**
+	 * The metrics of the conversion so far. Add them to a ConversionMetrics to total them up.
+	 */
+	public ConversionMetrics.Snapshot getMetrics() {
+		return metrics.snapshot();
+	}
+
+	// Name the document in the Flight Recorder event.
+	void setDocument(String document) {
+		event.document = document;
+	}
+
+	/**
+	 * Feed the next chunk of the raw HTML document into the converter.
+	 */
+	public void feed(char[] chunk) throws IOException {
+		feed(chunk, 0, chunk.length);
+	}
+
+	/**
+	 * Feed the next chunk of the raw HTML document into the converter.
+	 */
+	public void feed(char[] chunk, int offset, int length) throws IOException {
+		write(chunk, offset, length);
+		out.flush();
+	}
+
+	/**
+	 * Feed the next chunk of the raw HTML document into the converter, as bytes. The whole remainder of
+	 * the buffer is consumed; the buffer isn't referenced any further once this returns.
+	 */
+	public void feed(ByteBuffer chunk) throws IOException {
+		checkNotFinished();
+		metrics.add(ConversionMetrics.Counter.INPUT_BYTES, chunk.remaining());
+		if(truncated) {
+			// None of it would be converted anyway.
+			chunk.position(chunk.limit());
+			return;
+		}
+		// Finish off a character that was split between the previous chunk and this one, a byte at a time.
+		while(undecoded.position() > 0 && chunk.hasRemaining()) {
+			undecoded.put(chunk.get());
+			undecoded.flip();
+			decode(undecoded, false);
+			undecoded.compact();
+		}
+		decode(chunk, false);
+		// Hold on to the start of a character that's split between this chunk and the next one.
+		undecoded.put(chunk);
+		out.flush();
+	}
+
+	/**
+	 * Signal the end of the raw HTML document, writing out whatever is left of the XHTML. The Writers
+	 * are flushed, but not closed.
+	 */
+	public void finish() throws IOException {
+		checkNotFinished();
+		// Any leftover bytes are an incomplete character; let the decoder replace it.
+		undecoded.flip();
+		decode(undecoded, true);
+		decoded.clear();
+		decoder.flush(decoded);
+		decoded.flip();
+		write(decoded.array(), 0, decoded.limit());
+		finished = true;
+		// Hand off whatever the tokenizer's held back, unless the document's been cut short; either way,
+		//   the document handler ends it.
+		if(!truncated) {
+			try {
+				if(parallelBody != null) {
+					parallelBody.finish();
+				} else {
+					tokenizer.endSegment();
+				}
+			} catch(ConversionLimitException e) {
+				truncate(e);
+			}
+		}
+		documentHandler.end();
+		out.flush();
+		metrics.increment(ConversionMetrics.Counter.DOCUMENTS);
+		if(event.shouldCommit()) {
+			event.set(metrics);
+			event.commit();
+		}
+	}
+
+	// Decode as much of the given bytes as possible, converting the characters as they come.
+	private void decode(ByteBuffer bytes, boolean endOfInput) throws IOException {
+		CoderResult result;
+		do {
+			decoded.clear();
+			result = decoder.decode(bytes, decoded, endOfInput);
+			decoded.flip();
+			write(decoded.array(), 0, decoded.limit());
+		} while(result.isOverflow());
+	}
+
+	// Convert the next characters of the document, without flushing.
+	void write(char[] chunk, int offset, int length) throws IOException {
+		checkNotFinished();
+		if(limits == null) {
+			convert(chunk, offset, length);
+			return;
+		}
+		// Check the time and size a slice at a time, and convert only up to the size.
+		int end = offset + length;
+		while(offset < end && !truncated) {
+			int count = Math.min(end - offset, LIMIT_CHECK_INTERVAL);
+			try {
+				long left = limits.getMaximumSize() - metrics.get(ConversionMetrics.Counter.INPUT_CHARS);
+				if(left < count) {
+					convert(chunk, offset, (int) Math.max(left, 0));
+					throw new ConversionLimitException(ConversionLimits.Limit.SIZE, limits.getMaximumSize());
+				}
+				convert(chunk, offset, count);
+				if(maximumTime != null && System.nanoTime() - deadline > 0) {
+					throw new ConversionLimitException(ConversionLimits.Limit.TIME, maximumTime.toMillis());
+				}
+			} catch(ConversionLimitException e) {
+				truncate(e);
+			}
+			offset += count;
+		}
+	}
+
+	// Cut the document short at the limit it's reached, or fail if the limits don't truncate.
+	private void truncate(ConversionLimitException limitReached) throws IOException {
+		if(!limits.isTruncating()) {
+			finished = true;
+			throw limitReached;
+		}
+		truncated = true;
+		metrics.increment(ConversionMetrics.Counter.TRUNCATED_DOCUMENTS);
+		if(parallelBody == null) {
+			return;
+		}
+		// Everything up to the size limit is converted, as it would be without the pool. Any other limit
+		//   ends the body right where it was reached, or the time's up.
+		try {
+			if(limitReached.getLimit() == ConversionLimits.Limit.SIZE) {
+				parallelBody.truncate();
+			}
+		} catch(ConversionLimitException e) {
+			// A limit reached further up in the body cuts it short there instead.
+		}
+		parallelBody.cancel();
+	}
+
+	// Convert the next characters of the document, whatever the limits.
+	private void convert(char[] chunk, int offset, int length) throws IOException {
+		metrics.add(ConversionMetrics.Counter.INPUT_CHARS, length);
+		if(headState != AFTER_HEAD) {
+			int captured = captureHead(chunk, offset, length);
+			length -= captured - offset;
+			offset = captured;
+		}
+		if(parallelPool == null) {
+			tokenize(chunk, offset, length);
+			return;
+		}
+		if(parallelBody == null) {
+			int handOver = handOver(chunk, offset, length);
+			length -= handOver - offset;
+			offset = handOver;
+		}
+		// The segments time their own phases, and the merge times the nesting repair.
+		if(length > 0 && parallelBody != null) {
+			parallelBody.write(chunk, offset, length);
+		}
+	}
+
+	// Tokenize the next characters of the document right here.
+	private void tokenize(char[] chunk, int offset, int length) throws IOException {
+		boolean timed = metrics.timed;
+		long start = timed ? metrics.start() : 0;
+		// Whatever the handler does is timed as its own phase, and taken out of the tokenizer's time.
+		tokenizer.write(chunk, offset, length);
+		if(timed) {
+			metrics.stop(ConversionMetrics.Phase.TAG_EXTRACTION, start);
+		}
+	}
+
+	// Tokenize the characters up to the first place in the body where it can be split, and hand the body
+	//   over to the parallel converter there, returning where that is, or the end of the chunk.
+	private int handOver(char[] chunk, int offset, int length) throws IOException {
+		int end = offset + length;
+		int from = offset;
+		for(int i = offset; i < end; i++) {
+			// Everything up to here has been tokenized, since the previous character is a '>'.
+			if(bodyStarted && !tokenizer.isAfterBody() && HtmlTokenizer.isSegmentBoundary(chunk, offset, i)) {
+				tokenizer.endSegment();
+				int maximumTagLength = limits != null ? limits.getMaximumTagLength() : Integer.MAX_VALUE;
+				parallelBody = new ParallelBodyConverter(parallelPool, bodyWriter, rules, metrics,
+					tokenizer.getPosition(), maximumTagLength);
+				return i;
+			}
+			// The body can only start with the '>' of its tag, so only look at it again after each one.
+			if(chunk[i] == '>') {
+				tokenize(chunk, from, i + 1 - from);
+				from = i + 1;
+			}
+		}
+		tokenize(chunk, from, end - from);
+		return end;
+	}
+
+	private void checkNotFinished() {
+		if(finished) {
+			throw new IllegalStateException("The document has already been finished.");
+		}
+	}
+
+	// Wraps the body writer with the rest of the document.
+	private class DocumentHandler implements HtmlTokenizer.Handler {
+		@Override
+		public void startBody() throws IOException {
+			// The HEAD is needed before any of the BODY can be written, so stop collecting it here.
+			headState = AFTER_HEAD;
+			bodyStarted = true;
+			writeTimedHead();
+			bodyWriter.startBody();
+		}
+
+		@Override
+		public void text(CharSequence text) throws IOException {
+			bodyWriter.text(text);
+		}
+
+		@Override
+		public void tag(String tag, long position) throws IOException {
+			bodyWriter.tag(tag, position);
+		}
+
+		@Override
+		public void end() throws IOException {
+			writeTimedHead();
+			boolean timed = metrics.timed;
+			long start = timed ? metrics.start() : 0;
+			bodyWriter.end();
+			out.lines("\n</body>\n</html>");
+			if(timed) {
+				metrics.stop(ConversionMetrics.Phase.NESTING, start);
+			}
+		}
+	}
+
+	// Capture the HEAD and tokenize along with it, a character at a time, until either the HEAD is over or
+	//   the tokenizer has started the body, returning where that is, or the end of the chunk. The HEAD is
+	//   written as soon as the body starts, so it ends right there, however the document is split up.
+	private int captureHead(char[] chunk, int offset, int length) throws IOException {
+		boolean timed = metrics.timed;
+		long start = timed ? metrics.start() : 0;
+		int end = offset + length;
+		int i = offset;
+		// Before the body, the tokenizer does nothing but look for it, so all of it is part of the HEAD phase.
+		while(i < end && headState != AFTER_HEAD) {
+			captureHead(chunk[i]);
+			tokenizer.write(chunk, i++, 1);
+		}
+		if(timed) {
+			metrics.stop(ConversionMetrics.Phase.HEAD, start);
+		}
+		return i;
+	}
+
+	// Collect the raw content between the first "<head>" and the next "</head>".
+	private void captureHead(char c) {
+		String wanted = headState == BEFORE_HEAD ? HEAD_OPENING_TAG : HEAD_CLOSING_TAG;
+		if(c == wanted.charAt(headTag.length())) {
+			headTag.append(c);
+			if(headTag.length() == wanted.length()) {
+				headTag.setLength(0);
+				headFound = true;
+				headState++;
+			}
+			return;
+		}
+		// Not the tag after all, so any held-back characters are HEAD content. A '<' might restart the tag.
+		if(headState == IN_HEAD) {
+			headContent.append(headTag);
+		}
+		headTag.setLength(0);
+		if(c == '<') {
+			headTag.append(c);
+		} else if(headState == IN_HEAD) {
+			headContent.append(c);
+		}
+	}
+
+	// Write the head, timing it as part of the HEAD phase.
+	private void writeTimedHead() throws IOException {
+		boolean timed = metrics.timed;
+		long start = timed ? metrics.start() : 0;
+		writeHead();
+		if(timed) {
+			metrics.stop(ConversionMetrics.Phase.HEAD, start);
+		}
+	}
+
+	// Write everything up to and including the opening BODY tag.
+	private void writeHead() throws IOException {
+		if(headWritten) {
+			return;
+		}
+		headWritten = true;
+		// Begin building the header, noting that TITLE is a required HEAD item.
+		StringBuilder newBody = new StringBuilder();
+		// Assuming the XML, DOCTYPE, and html tag attributes here, please change them as needed.
+		newBody
+			.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+			.append("\n<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">")
+			.append("\n<html xmlns=\"http://www.w3.org/TR/xhtml1\" xml:lang=\"en\" lang=\"en\">\n<head>");
+		// Check if HEAD content is already defined -- if so, add it; if not create one.
+		// The HEAD element is INTENTIONALLY NOT CLOSED here.
+		if(headFound) {
+			// Sanitize the tags like those of the BODY, which also closes self-terminating tags (like 'meta'
+			//   and 'link'); see HeadCorrector.
+			newBody.append('\n').append(HeadCorrector.correct(this.headContent.toString(), rules));
+		} else { newBody.append("<head>"); }
+		// Check for the REQUIRED TITLE element in the HEAD section.
+		String head = newBody.toString();
+		if(!head.contains("<title>") && !head.contains("<title ")) {
+			// A title doesn't exist, time to add a default one so generic it will have to be changed.
+			newBody.append("<title>File Converted by HTML-to-XHTML Java Conversion Tool</title>");
+		}
+		// Close out the HEAD element now, and open the BODY.
+		newBody.append("\n</head>");
+		newBody.append("\n<body>");
+		out.lines(newBody.toString());
+		// The HEAD content is no longer needed.
+		this.headContent.setLength(0);
+	}
+}
@@ -0,0 +1,105 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the pretty-printed and the minimized XHTML at the same time, in the one pass over the document.
+ *
+ * The converter tells the two apart by what it writes: layout (a line break and indentation) only goes
+ * to the pretty-printed output, while content (tags and text) goes to both of them as it is. So the
+ * minimized output never loses whitespace that means something, like the space in "&lt;/b&gt; and a
+ * half", the way stripping every line break and the whitespace after it from the pretty-printed output
+ * would; and the pretty-printed output never has to be held on to, or gone over a second time.
+ */
+class XhtmlEmitter {
+	private final Writer pretty;
+	// Null when there's no minimized output.
+	private final Writer minimized;
+	// Output sizes, and the time spent writing the minimized output.
+	private final DocumentMetrics metrics;
+
+	XhtmlEmitter(Writer pretty, Writer minimized, DocumentMetrics metrics) {
+		this.pretty = pretty;
+		this.minimized = minimized;
+		this.metrics = metrics;
+	}
+
+	// Start a new line at the given indentation, in the pretty-printed output only.
+	void layout(CharSequence indent) throws IOException {
+		pretty.write('\n');
+		pretty.append(indent);
+		// Line breaks and indentation are ASCII.
+		metrics.add(ConversionMetrics.Counter.OUTPUT_BYTES, 1 + indent.length());
+	}
+
+	// Write tags or text to both outputs.
+	void content(String content) throws IOException {
+		pretty.write(content);
+		metrics.add(ConversionMetrics.Counter.OUTPUT_BYTES, utf8Length(content));
+		writeMinimized(content);
+	}
+
+	// Write text between two tags that's nothing but whitespace. The pretty-printed output has its own
+	//   layout instead, but in the minimized one it may be all that separates two words.
+	void whitespace(String text) throws IOException {
+		if(!text.isEmpty()) {
+			writeMinimized(" ");
+		}
+	}
+
+	// Write content with line breaks of its own in it, like the HEAD, as layout: the minimized output
+	//   drops each of them along with the whitespace after it.
+	void lines(String lines) throws IOException {
+		pretty.write(lines);
+		metrics.add(ConversionMetrics.Counter.OUTPUT_BYTES, utf8Length(lines));
+		if(minimized == null) {
+			return;
+		}
+		StringBuilder minimizedLines = new StringBuilder(lines.length());
+		boolean inLineBreak = false;
+		for(int i = 0; i < lines.length(); i++) {
+			char c = lines.charAt(i);
+			if(HtmlTokenizer.isLineBreak(c)) {
+				inLineBreak = true;
+			} else if(!inLineBreak || !HtmlTokenizer.isWhitespace(c)) {
+				inLineBreak = false;
+				minimizedLines.append(c);
+			}
+		}
+		writeMinimized(minimizedLines.toString());
+	}
+
+	void flush() throws IOException {
+		pretty.flush();
+		if(minimized != null) {
+			minimized.flush();
+		}
+	}
+
+	private void writeMinimized(String content) throws IOException {
+		if(minimized == null) {
+			return;
+		}
+		boolean timed = metrics.timed;
+		long start = timed ? metrics.start() : 0;
+		minimized.write(content);
+		metrics.add(ConversionMetrics.Counter.MINIMIZED_BYTES, utf8Length(content));
+		if(timed) {
+			metrics.stop(ConversionMetrics.Phase.MINIMIZATION, start);
+		}
+	}
+
+	// The number of bytes the given text takes in UTF-8, where a surrogate pair takes four.
+	static int utf8Length(String text) {
+		int length = text.length();
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c >= 0x80) {
+				// Two bytes up to U+07FF, three beyond, and each half of a surrogate pair two.
+				length += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,113 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import java.util.HashMap;
+
+/**
+ * A single tag being corrected: its element name, and the XHTML attributes and inline style it ends
+ * up with. The attribute rules of a TagRules table build it up one attribute at a time.
+ */
+public class XhtmlTag {
+	private String element = "";
+	private boolean closing = false;
+	// The finished attributes, each already in the form ' name="value"'.
+	private final StringBuilder attributes = new StringBuilder();
+	// The value of each attribute, as it was given.
+	private final HashMap<String, String> attributeValues = new HashMap<>();
+	// Aggregated STYLE information, from the style attribute itself and any attributes converted to CSS.
+	private final StringBuilder style = new StringBuilder();
+	private int styleSources = 0;
+	// Where the attributes are traced.
+	private final Trace trace;
+
+	XhtmlTag() {
+		this(Trace.OFF);
+	}
+
+	XhtmlTag(Trace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * The (lower-case) element name of the tag, without any namespace prefix.
+	 */
+	public String getElement() {
+		return element;
+	}
+
+	/**
+	 * Add an attribute to the tag. The value is quoted as needed; an attribute that's already there is
+	 * kept as it is, since XHTML doesn't allow the same attribute twice.
+	 */
+	public void addAttribute(String name, String value) {
+		addAttribute(name, value, '"');
+	}
+
+	/**
+	 * Append CSS declarations to the tag's inline style, e.g. "background-color:#fff". Several of them
+	 * can be given at once, separated with semicolons as usual.
+	 */
+	public void addStyle(String declarations) {
+		// The style attribute is written in double quotes, so any quoting inside it has to be single.
+		style.append(declarations.replace('"', '\''));
+		if(!declarations.endsWith(";")) {
+			style.append(';');
+		}
+		styleSources++;
+	}
+
+	// Add an attribute, keeping the quote it came with if there's one.
+	void addAttribute(String name, String value, char quote) {
+		if(attributeValues.putIfAbsent(name, value) != null) {
+			return;
+		}
+		if(value.indexOf(quote) >= 0) {
+			// Only possible for unquoted values; they get double quotes.
+			value = value.replace("\"", "&quot;");
+			quote = '"';
+		}
+		attributes.append(' ').append(name).append('=').append(quote).append(value).append(quote);
+		if(trace.isEnabled(Trace.Phase.SANITIZER, Trace.Level.DETAIL)) {
+			trace.event(Trace.Phase.SANITIZER, Trace.Level.DETAIL, "attribute", -1, "element", element, "name", name, "value", value);
+		}
+	}
+
+	// Start over with a new tag.
+	void reset(String element, boolean closing) {
+		this.element = element;
+		this.closing = closing;
+		attributes.setLength(0);
+		attributeValues.clear();
+		style.setLength(0);
+		styleSources = 0;
+	}
+
+	// The value the given (lower-case) attribute was given, or null if the tag doesn't have it.
+	String getAttribute(String name) {
+		return attributeValues.get(name);
+	}
+
+	boolean isClosing() {
+		return closing;
+	}
+
+	// Whether the inline style was put together from more than one attribute.
+	boolean hasMergedStyle() {
+		return styleSources > 1 && !closing;
+	}
+
+	// Build the full corrected tag, forcibly closing it if it's a self-terminating type.
+	String toXhtml(boolean selfClosing) {
+		StringBuilder xhtmlTag = new StringBuilder(element.length() + attributes.length() + style.length() + 16);
+		xhtmlTag.append(closing ? "</" : "<").append(element);
+		// Closing tags can't have any attributes in XHTML.
+		if(!closing) {
+			xhtmlTag.append(attributes);
+			// Append the final style information, if defined, then the closing angle bracket.
+			if(style.length() > 0) {
+				xhtmlTag.append(" style=\"").append(style).append('"');
+			}
+		}
+		xhtmlTag.append(selfClosing ? " />" : ">");
+		return xhtmlTag.toString();
+	}
+}
@@ -0,0 +1,72 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchConverterTest {
+	@TempDir
+	Path directory;
+
+	@Test
+	void writesBothOutputs() throws Exception {
+		Files.writeString(directory.resolve("a.html"), "<html><body><p>a</p></body></html>", StandardCharsets.UTF_8);
+		BatchConverter.Summary summary = converter().convert(List.of(directory.toString()));
+		assertEquals(1, summary.getConvertedFiles());
+		assertEquals(List.of("a.html", "a.min.xhtml", "a.xhtml"), files());
+		assertEquals(HtmlToXhtml.convert("<html><body><p>a</p></body></html>"),
+			Files.readString(directory.resolve("a.xhtml"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void failedFileLeavesNothingBehind() throws Exception {
+		Files.writeString(directory.resolve("deep.html"), "<html><body>" + "<div>x".repeat(100), StandardCharsets.UTF_8);
+		BatchConverter.Summary summary = converter().convert(List.of(directory.toString()));
+		assertEquals(1, summary.getFailedFiles());
+		assertEquals(List.of("deep.html"), files());
+	}
+
+	@Test
+	void failedFileKeepsEarlierOutputs() throws Exception {
+		Files.writeString(directory.resolve("deep.html"), "<html><body>" + "<div>x".repeat(100), StandardCharsets.UTF_8);
+		Files.writeString(directory.resolve("deep.xhtml"), "earlier", StandardCharsets.UTF_8);
+		converter().convert(List.of(directory.toString()));
+		assertEquals(List.of("deep.html", "deep.xhtml"), files());
+		assertEquals("earlier", Files.readString(directory.resolve("deep.xhtml"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void replacesEarlierOutputs() throws Exception {
+		Files.writeString(directory.resolve("a.html"), "<html><body><p>a</p></body></html>", StandardCharsets.UTF_8);
+		Files.writeString(directory.resolve("a.xhtml"), "earlier", StandardCharsets.UTF_8);
+		converter().convert(List.of(directory.toString()));
+		assertNotEquals("earlier", Files.readString(directory.resolve("a.xhtml"), StandardCharsets.UTF_8));
+		assertEquals(List.of("a.html", "a.min.xhtml", "a.xhtml"), files());
+	}
+
+	// A converter writing both outputs next to the inputs, which fails files nested too deep.
+	private static BatchConverter converter() {
+		BatchConverter converter = new BatchConverter(new TagRules(), Trace.OFF, null, true, 2);
+		ConversionLimits limits = new ConversionLimits();
+		limits.setMaximumDepth(50);
+		converter.setLimits(limits);
+		return converter;
+	}
+
+	// The names of all the files in the directory, hidden ones too.
+	private List<String> files() throws IOException {
+		try(Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.xml.sax.SAXException;
+
+class ConversionLimitsTest {
+	private static final int SIZE = 1024 * 1024;
+
+	@ParameterizedTest
+	@EnumSource(ConversionLimits.Limit.class)
+	void failsAtLimit(ConversionLimits.Limit limit) {
+		ConversionLimits limits = limits(limit);
+		ConversionLimitException e = assertThrows(ConversionLimitException.class,
+			() -> convert(document(limit), limits, null));
+		assertEquals(limit, e.getLimit());
+	}
+
+	@ParameterizedTest
+	@EnumSource(ConversionLimits.Limit.class)
+	void truncatesAtLimit(ConversionLimits.Limit limit) throws Exception {
+		ConversionLimits limits = limits(limit);
+		limits.setTruncating(true);
+		String html = document(limit);
+		StringWriter xhtml = new StringWriter();
+		XhtmlConverter converter = new XhtmlConverter(xhtml);
+		converter.setLimits(limits);
+		converter.feed(html.toCharArray());
+		converter.finish();
+		assertEquals(1, converter.getMetrics().get(ConversionMetrics.Counter.TRUNCATED_DOCUMENTS));
+		assertWellFormedBody(xhtml.toString());
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = ConversionLimits.Limit.class, names = "TIME", mode = EnumSource.Mode.EXCLUDE)
+	void truncatesInParallelWhereItWould(ConversionLimits.Limit limit) throws IOException {
+		ConversionLimits limits = limits(limit);
+		limits.setTruncating(true);
+		String html = document(limit);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(convert(html, limits, null), convert(html, limits, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void withinLimits() throws IOException {
+		ConversionLimits limits = new ConversionLimits();
+		limits.set("time=60,size=4m,tags=1m,depth=1024,tag-length=64k");
+		String html = document(ConversionLimits.Limit.TAGS);
+		assertEquals(convert(html, null, null), convert(html, limits, null));
+	}
+
+	@Test
+	void parse() {
+		ConversionLimits limits = new ConversionLimits();
+		limits.set("time=10,size=64m,tags=1m,depth=512,tag-length=64k");
+		assertEquals(Duration.ofSeconds(10), limits.getMaximumTime());
+		assertEquals(64L * 1024 * 1024, limits.getMaximumSize());
+		assertEquals(1024L * 1024, limits.getMaximumTags());
+		assertEquals(512, limits.getMaximumDepth());
+		assertEquals(64 * 1024, limits.getMaximumTagLength());
+		assertFalse(limits.isTruncating());
+		assertThrows(IllegalArgumentException.class, () -> limits.set("width=10"));
+	}
+
+	// Limits of which the document for the given limit reaches that one, about halfway through.
+	private static ConversionLimits limits(ConversionLimits.Limit limit) {
+		ConversionLimits limits = new ConversionLimits();
+		switch(limit) {
+			case TIME:
+				limits.setMaximumTime(Duration.ofNanos(1));
+				break;
+			case SIZE:
+				limits.setMaximumSize(SIZE / 2);
+				break;
+			case TAGS:
+				limits.setMaximumTags(50_000);
+				break;
+			case DEPTH:
+				limits.setMaximumDepth(256);
+				break;
+			default:
+				limits.setMaximumTagLength(64 * 1024);
+		}
+		return limits;
+	}
+
+	// A document of about SIZE characters that reaches the given limit.
+	private static String document(ConversionLimits.Limit limit) {
+		StringBuilder html = new StringBuilder("<html><head><title>Limits</title></head><body>\n");
+		switch(limit) {
+			case DEPTH:
+				// Elements that are never closed.
+				while(html.length() < SIZE) {
+					html.append("<div>x\n");
+				}
+				break;
+			case TAG_LENGTH:
+				// A single tag with as many attributes as fit.
+				html.append("<p");
+				for(int i = 0; html.length() < SIZE; i++) {
+					html.append(" a").append(i).append("=\"v\"");
+				}
+				html.append(">x</p>\n");
+				break;
+			default:
+				for(int i = 0; html.length() < SIZE; i++) {
+					html.append("<div class=d").append(i % 7).append("><p>Paragraph ").append(i)
+						.append(" &amp; <b>bold</b></p></div>\n");
+				}
+		}
+		return html.append("</body></html>").toString();
+	}
+
+	// Convert a document within the given limits, if any, in parallel on the given pool, if any.
+	private static String convert(String html, ConversionLimits limits, ForkJoinPool pool) throws IOException {
+		StringWriter xhtml = new StringWriter();
+		XhtmlConverter converter = new XhtmlConverter(xhtml);
+		if(pool != null) {
+			converter.setParallelPool(pool);
+		}
+		if(limits != null) {
+			converter.setLimits(limits);
+		}
+		converter.feed(html.toCharArray());
+		converter.finish();
+		return xhtml.toString();
+	}
+
+	// Parse the BODY of the XHTML, from its opening tag to its closing one, as XML.
+	static void assertWellFormedBody(String xhtml) throws ParserConfigurationException, SAXException, IOException {
+		String body = xhtml.substring(xhtml.indexOf("\n<body>"), xhtml.lastIndexOf("\n</html>"));
+		DocumentBuilderFactory.newInstance().newDocumentBuilder()
+			.parse(new ByteArrayInputStream(body.trim().getBytes(StandardCharsets.UTF_8)));
+	}
+}
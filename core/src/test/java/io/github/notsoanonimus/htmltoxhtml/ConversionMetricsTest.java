@@ -0,0 +1,153 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+import org.junit.jupiter.api.Test;
+
+class ConversionMetricsTest {
+	// Multibyte characters, in the text and in a tag, so characters and bytes differ.
+	private static final String DOCUMENT = "<html><head><title>Caf\u00e9</title></head><body>"
+		+ "<div title=\"\u20ac\"><li>\u00e9 \ud83d\ude00</li><p>a<br>b</span></body></html>";
+	private static final String EVENT_NAME = "io.github.notsoanonimus.htmltoxhtml.Conversion";
+
+	@Test
+	void nestedPhasesLeftOut() throws InterruptedException {
+		DocumentMetrics metrics = new DocumentMetrics(true);
+		long before = System.nanoTime();
+		long outer = metrics.start();
+		Thread.sleep(5);
+		long inner = metrics.start();
+		long innermost = metrics.start();
+		Thread.sleep(10);
+		metrics.stop(ConversionMetrics.Phase.MINIMIZATION, innermost);
+		Thread.sleep(5);
+		metrics.stop(ConversionMetrics.Phase.SANITIZATION, inner);
+		metrics.stop(ConversionMetrics.Phase.NESTING, outer);
+		long elapsed = System.nanoTime() - before;
+
+		long nesting = metrics.getNanos(ConversionMetrics.Phase.NESTING);
+		long sanitization = metrics.getNanos(ConversionMetrics.Phase.SANITIZATION);
+		long minimization = metrics.getNanos(ConversionMetrics.Phase.MINIMIZATION);
+		assertTrue(minimization >= TimeUnit.MILLISECONDS.toNanos(10), minimization + " ns");
+		assertTrue(sanitization >= TimeUnit.MILLISECONDS.toNanos(5), sanitization + " ns");
+		assertTrue(nesting >= TimeUnit.MILLISECONDS.toNanos(5), nesting + " ns");
+		// Each moment counts for one phase only, so together they're no longer than the whole.
+		assertTrue(nesting + sanitization + minimization <= elapsed, nesting + sanitization + minimization + " ns");
+	}
+
+	@Test
+	void phasesNeverNegative() {
+		DocumentMetrics metrics = new DocumentMetrics(true);
+		for(int i = 0; i < 1000; i++) {
+			long outer = metrics.start();
+			long inner = metrics.start();
+			metrics.stop(ConversionMetrics.Phase.values()[i % 5], inner);
+			metrics.stop(ConversionMetrics.Phase.values()[(i + 1) % 5], outer);
+		}
+		for(ConversionMetrics.Phase phase : ConversionMetrics.Phase.values()) {
+			assertTrue(metrics.getNanos(phase) >= 0, phase.name());
+		}
+	}
+
+	@Test
+	void outputsCountedInBytes() throws IOException {
+		StringWriter xhtml = new StringWriter();
+		StringWriter minimized = new StringWriter();
+		XhtmlConverter converter = new XhtmlConverter(xhtml, minimized, StandardCharsets.UTF_8, new TagRules(), Trace.OFF);
+		converter.feed(ByteBuffer.wrap(DOCUMENT.getBytes(StandardCharsets.UTF_8)));
+		converter.finish();
+		ConversionMetrics.Snapshot metrics = converter.getMetrics();
+		assertEquals(DOCUMENT.getBytes(StandardCharsets.UTF_8).length, metrics.get(ConversionMetrics.Counter.INPUT_BYTES));
+		assertEquals(DOCUMENT.length(), metrics.get(ConversionMetrics.Counter.INPUT_CHARS));
+		assertEquals(xhtml.toString().getBytes(StandardCharsets.UTF_8).length, metrics.get(ConversionMetrics.Counter.OUTPUT_BYTES));
+		assertEquals(minimized.toString().getBytes(StandardCharsets.UTF_8).length,
+			metrics.get(ConversionMetrics.Counter.MINIMIZED_BYTES));
+	}
+
+	@Test
+	void totals() throws IOException {
+		ConversionMetrics.Snapshot document = convert(DOCUMENT, null);
+		ConversionMetrics totals = new ConversionMetrics();
+		totals.add(document);
+		ConversionMetrics.Snapshot once = totals.snapshot();
+		totals.add(document);
+		ConversionMetrics.Snapshot twice = totals.snapshot();
+		for(ConversionMetrics.Counter counter : ConversionMetrics.Counter.values()) {
+			assertEquals(document.get(counter), once.get(counter), counter.name());
+			assertEquals(2 * document.get(counter), twice.get(counter), counter.name());
+		}
+		assertEquals(1, once.get(ConversionMetrics.Counter.DOCUMENTS));
+		assertEquals(1, once.get(ConversionMetrics.Counter.INSERTED_LISTS));
+
+		totals.reset();
+		ConversionMetrics.Snapshot reset = totals.snapshot();
+		for(ConversionMetrics.Counter counter : ConversionMetrics.Counter.values()) {
+			assertEquals(0, reset.get(counter), counter.name());
+		}
+		for(ConversionMetrics.Phase phase : ConversionMetrics.Phase.values()) {
+			assertEquals(0, reset.getNanos(phase), phase.name());
+		}
+		// Snapshots taken earlier don't change.
+		assertEquals(2, twice.get(ConversionMetrics.Counter.DOCUMENTS));
+	}
+
+	@Test
+	void flightRecorderEvent() throws Exception {
+		AtomicReference<RecordedEvent> recorded = new AtomicReference<>();
+		CountDownLatch received = new CountDownLatch(1);
+		ConversionMetrics.Snapshot metrics;
+		try(RecordingStream stream = new RecordingStream()) {
+			stream.enable(EVENT_NAME).withoutThreshold();
+			stream.setMaxAge(Duration.ofMinutes(1));
+			stream.onEvent(EVENT_NAME, event -> {
+				if("metrics test".equals(event.getString("document"))) {
+					recorded.set(event);
+					received.countDown();
+				}
+			});
+			stream.startAsync();
+			metrics = convert(DOCUMENT, "metrics test");
+			assertTrue(received.await(30, TimeUnit.SECONDS), "No event recorded");
+		}
+		RecordedEvent event = recorded.get();
+		assertNotNull(event);
+		assertEquals(false, event.getBoolean("truncated"));
+		assertEquals(metrics.get(ConversionMetrics.Counter.INPUT_BYTES), event.getLong("inputBytes"));
+		assertEquals(metrics.get(ConversionMetrics.Counter.INPUT_CHARS), event.getLong("inputChars"));
+		assertEquals(metrics.get(ConversionMetrics.Counter.OUTPUT_BYTES), event.getLong("outputBytes"));
+		assertEquals(metrics.get(ConversionMetrics.Counter.MINIMIZED_BYTES), event.getLong("minimizedBytes"));
+		assertEquals(metrics.get(ConversionMetrics.Counter.TAGS), event.getLong("tags"));
+		assertEquals(1, event.getLong("insertedLists"));
+		assertEquals(1, event.getLong("droppedClosingTags"));
+		// The phases are timed while the event is enabled.
+		assertTrue(event.getLong("nestingTime") > 0);
+		assertEquals(metrics.getNanos(ConversionMetrics.Phase.NESTING), event.getLong("nestingTime"));
+	}
+
+	// Convert a document from bytes, with a minimized output, naming it in the Flight Recorder event if
+	//   the name isn't null.
+	private static ConversionMetrics.Snapshot convert(String html, String document) throws IOException {
+		XhtmlConverter converter = new XhtmlConverter(new StringWriter(), new StringWriter(), StandardCharsets.UTF_8,
+			new TagRules(), Trace.OFF);
+		if(document != null) {
+			converter.setDocument(document);
+		}
+		converter.feed(ByteBuffer.wrap(html.getBytes(StandardCharsets.UTF_8)));
+		converter.finish();
+		return converter.getMetrics();
+	}
+}
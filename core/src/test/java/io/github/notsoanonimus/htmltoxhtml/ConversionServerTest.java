@@ -0,0 +1,192 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConversionServerTest {
+	private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+	// The number of requests that can wait for each conversion, as in ConversionServer.
+	private static final int WAITING_REQUESTS_PER_THREAD = 16;
+
+	private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	private ConversionServer server;
+	private URI uri;
+
+	@AfterEach
+	void close() {
+		if(server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	void outputsSameAsConverter() throws Exception {
+		start(2);
+		String html = Files.readString(Paths.get("../docs/bad_html_test.html"), StandardCharsets.UTF_8);
+		StringWriter xhtml = new StringWriter();
+		StringWriter minimized = new StringWriter();
+		HtmlToXhtml.convert(new StringReader(html), xhtml, minimized);
+		assertResponse(200, xhtml.toString(), post("", html.getBytes(StandardCharsets.UTF_8), null));
+		assertResponse(200, xhtml.toString(), post("?output=pretty", html.getBytes(StandardCharsets.UTF_8), null));
+		assertResponse(200, minimized.toString(), post("?output=minimized", html.getBytes(StandardCharsets.UTF_8), null));
+		assertResponse(200, xhtml + "\n\n\nMinimized XHTML:\n" + minimized + "\n",
+			post("?output=CONSOLE", html.getBytes(StandardCharsets.UTF_8), null));
+		assertTrue(server.toString().startsWith("4 request(s) converted"), server.toString());
+	}
+
+	@Test
+	void unknownOutput() throws Exception {
+		start(1);
+		assertEquals(400, post("?output=xml", "<p>x</p>".getBytes(StandardCharsets.UTF_8), null).statusCode());
+	}
+
+	@Test
+	void onlyPost() throws Exception {
+		start(1);
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+			HttpResponse.BodyHandlers.ofString());
+		assertEquals(405, response.statusCode());
+		assertEquals("POST", response.headers().firstValue("Allow").orElse(null));
+	}
+
+	@Test
+	void contentTypeCharsetBeatsSniffedOne() throws Exception {
+		start(1);
+		String html = "<html><head><meta charset=windows-1252></head><body><p>caf\u00e9</p></body></html>";
+		String expected = HtmlToXhtml.convert(html);
+		// Sniffed from the META tag.
+		assertResponse(200, expected, post("", html.getBytes(WINDOWS_1252), "text/html"));
+		// Declared by the request, which the META tag doesn't change.
+		assertResponse(200, expected, post("", html.getBytes(StandardCharsets.UTF_8), "text/html; charset=UTF-8"));
+		assertResponse(200, expected, post("", html.getBytes(StandardCharsets.ISO_8859_1), "text/html; Charset=\"iso-8859-1\""));
+	}
+
+	@Test
+	void turnedAwayBeyondWaitingRequests() throws Exception {
+		start(1);
+		// One request converting, whose body doesn't end until it's told to.
+		SlowRequest converting = new SlowRequest("<html><body><p>One", "</p></body></html>");
+		awaitState("1 converting, 0 waiting");
+		// As many waiting as there can be.
+		List<CompletableFuture<HttpResponse<String>>> waiting = new ArrayList<>();
+		for(int i = 0; i < WAITING_REQUESTS_PER_THREAD; i++) {
+			waiting.add(client.sendAsync(request("", "<p>Waiting</p>".getBytes(StandardCharsets.UTF_8), null),
+				HttpResponse.BodyHandlers.ofString()));
+		}
+		awaitState("1 converting, " + WAITING_REQUESTS_PER_THREAD + " waiting");
+
+		HttpResponse<String> rejected = post("", "<p>Rejected</p>".getBytes(StandardCharsets.UTF_8), null);
+		assertEquals(503, rejected.statusCode());
+		assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+		assertEquals("HTTP/1.1 200 OK", converting.finish());
+		for(CompletableFuture<HttpResponse<String>> response : waiting) {
+			assertResponse(200, HtmlToXhtml.convert("<p>Waiting</p>"), response.get());
+		}
+		assertTrue(server.toString().startsWith(WAITING_REQUESTS_PER_THREAD + 1 + " request(s) converted, 0 failed, 1 turned away"),
+			server.toString());
+	}
+
+	@Test
+	void closeTurnsRequestsAway() throws Exception {
+		start(1);
+		SlowRequest converting = new SlowRequest("<html><body><p>Last", "</p></body></html>");
+		awaitState("1 converting, 0 waiting");
+		// Closing waits for the conversion, and turns away the requests that come in meanwhile.
+		Thread closing = new Thread(server::close);
+		closing.start();
+		while(closing.getState() == Thread.State.NEW || closing.getState() == Thread.State.RUNNABLE) {
+			Thread.sleep(10);
+		}
+		HttpResponse<String> rejected = post("", "<p>Late</p>".getBytes(StandardCharsets.UTF_8), null);
+		assertEquals(503, rejected.statusCode());
+		assertEquals("HTTP/1.1 200 OK", converting.finish());
+		closing.join();
+		assertTrue(server.toString().startsWith("1 request(s) converted, 0 failed, 1 turned away"), server.toString());
+		// Once it's closed, nothing listens anymore.
+		assertThrows(IOException.class, () -> post("", "<p>After</p>".getBytes(StandardCharsets.UTF_8), null));
+	}
+
+	private void start(int concurrency) throws IOException {
+		server = new ConversionServer(new TagRules(), Trace.OFF, concurrency);
+		InetSocketAddress address = server.start(0);
+		uri = URI.create("http://" + address.getHostString() + ":" + address.getPort() + "/convert");
+	}
+
+	// Wait until the server's statistics say it's in the given state.
+	private void awaitState(String state) throws InterruptedException {
+		long deadline = System.nanoTime() + 10_000_000_000L;
+		while(!server.toString().endsWith(state)) {
+			assertTrue(System.nanoTime() - deadline < 0, server.toString());
+			Thread.sleep(10);
+		}
+	}
+
+	private HttpRequest request(String query, byte[] body, String contentType) {
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri.resolve("convert" + query))
+			.POST(HttpRequest.BodyPublishers.ofByteArray(body));
+		if(contentType != null) {
+			request.header("Content-Type", contentType);
+		}
+		return request.build();
+	}
+
+	private HttpResponse<String> post(String query, byte[] body, String contentType) throws IOException, InterruptedException {
+		return client.send(request(query, body, contentType), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+	}
+
+	// A request on a connection of its own, whose body is sent in two parts: the first one right away, so
+	//   the request is converting, and the second one when it's finished.
+	private class SlowRequest {
+		private final Socket socket;
+		private final byte[] rest;
+
+		SlowRequest(String first, String rest) throws IOException {
+			byte[] start = first.getBytes(StandardCharsets.UTF_8);
+			this.rest = rest.getBytes(StandardCharsets.UTF_8);
+			socket = new Socket(uri.getHost(), uri.getPort());
+			OutputStream out = socket.getOutputStream();
+			out.write(("POST /convert HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\nContent-Length: "
+				+ (start.length + this.rest.length) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.write(start);
+			out.flush();
+		}
+
+		// Send the rest of the body, and return the status line of the response.
+		String finish() throws IOException {
+			try(socket) {
+				socket.getOutputStream().write(rest);
+				socket.getOutputStream().flush();
+				String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+				return response.substring(0, response.indexOf("\r\n"));
+			}
+		}
+	}
+
+	private static void assertResponse(int status, String body, HttpResponse<String> response) {
+		assertEquals(status, response.statusCode(), response.body());
+		assertEquals(body, response.body());
+	}
+}
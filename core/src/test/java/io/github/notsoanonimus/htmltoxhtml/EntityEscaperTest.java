@@ -0,0 +1,83 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class EntityEscaperTest {
+	private static final TagRules.EntityOutput LITERAL = TagRules.EntityOutput.LITERAL;
+	private static final TagRules.EntityOutput NUMERIC = TagRules.EntityOutput.NUMERIC;
+
+	@Test
+	void namedReferences() {
+		assertEquals("a\u00a0b\u2026", escape("a&nbsp;b&hellip;", LITERAL));
+		assertEquals("a&#160;b&#8230;", escape("a&nbsp;b&hellip;", NUMERIC));
+	}
+
+	@Test
+	void numericReferences() {
+		assertEquals("&#65;&#66;&#67;", escape("&#65;&#x42;&#X43;", LITERAL));
+		// Without their semicolon, too.
+		assertEquals("&#65; x&#67;", escape("&#65 x&#X43", LITERAL));
+	}
+
+	@Test
+	void numericReferencesXmlDoesntAllow() {
+		assertEquals("&#65533;&#65533;&#65533;", escape("&#0;&#xD800;&#1114112;", LITERAL));
+	}
+
+	@Test
+	void legacyNamesWithoutSemicolon() {
+		assertEquals("\u00a9 2024", escape("&copy 2024", LITERAL));
+		assertEquals("\u00a9x", escape("&copyx", LITERAL));
+		// The longest name that's complete wins.
+		assertEquals("&#172;it;", escape("&notit;", NUMERIC));
+	}
+
+	@Test
+	void strayCharacters() {
+		assertEquals("a &amp; b &lt; c", escape("a & b < c", LITERAL));
+		assertEquals("&amp;#;&amp;#x;&amp;unknown;&amp;", escape("&#;&#x;&unknown;&", LITERAL));
+	}
+
+	@Test
+	void xmlEntitiesKept() {
+		assertEquals("&amp;&lt;&gt;&quot;&apos;", escape("&amp;&lt;&gt;&quot;&apos;", LITERAL));
+		assertEquals("&amp;&lt;&gt;&quot;&apos;", escape("&amp;&lt;&gt;&quot;&apos;", NUMERIC));
+		assertEquals("&amp;", escape("&amp", NUMERIC));
+	}
+
+	@Test
+	void attributeValues() {
+		// A legacy name followed by '=' or a letter or digit is a query parameter, not a reference.
+		assertEquals("<a href=\"?a=1&amp;copy=2&amp;b\u00a9\" title='\u00a9 1 &lt; &lt;'>",
+			EntityEscaper.escapeTag("<a href=\"?a=1&copy=2&amp;b&copy;\" title='&copy 1 &lt; <'>", LITERAL));
+		assertEquals("<p>", EntityEscaper.escapeTag("<p>", LITERAL));
+	}
+
+	@Test
+	void referencesSplitAcrossChunks() {
+		String text = "a&nbsp;b&hellip;&#65;&#x42 &copy 2024 &notit; & < &amp;&quot;&#;&unknown;&#1114112;&";
+		for(TagRules.EntityOutput output : TagRules.EntityOutput.values()) {
+			String expected = escape(text, output);
+			for(int chunkSize = 1; chunkSize < 8; chunkSize++) {
+				assertEquals(expected, escape(text, output, chunkSize), output + " in chunks of " + chunkSize);
+			}
+		}
+	}
+
+	private static String escape(String text, TagRules.EntityOutput output) {
+		return escape(text, output, text.length());
+	}
+
+	// Escape the text of a document fed in chunks of the given size.
+	private static String escape(String text, TagRules.EntityOutput output, int chunkSize) {
+		StringBuilder out = new StringBuilder();
+		EntityEscaper escaper = new EntityEscaper(output, false);
+		for(int i = 0; i < text.length(); i += chunkSize) {
+			escaper.write(text.substring(i, Math.min(text.length(), i + chunkSize)), out);
+		}
+		escaper.flush(out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,118 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HtmlInputTest {
+	private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+	private static final String DOCUMENT = "<html><head><title>T</title></head><body><p>caf\u00e9 \u20ac</p></body></html>";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void byteOrderMarks() throws IOException {
+		assertConverted(bytes(new byte[] { (byte)0xEF, (byte)0xBB, (byte)0xBF }, DOCUMENT, StandardCharsets.UTF_8),
+			StandardCharsets.UTF_8, DOCUMENT);
+		assertConverted(bytes(new byte[] { (byte)0xFF, (byte)0xFE }, DOCUMENT, StandardCharsets.UTF_16LE),
+			StandardCharsets.UTF_16LE, DOCUMENT);
+		assertConverted(bytes(new byte[] { (byte)0xFE, (byte)0xFF }, DOCUMENT, StandardCharsets.UTF_16BE),
+			StandardCharsets.UTF_16BE, DOCUMENT);
+	}
+
+	@Test
+	void byteOrderMarkBeatsMetaCharset() throws IOException {
+		String html = "<html><head><meta charset=windows-1252></head><body><p>\u20ac</p></body></html>";
+		assertConverted(bytes(new byte[] { (byte)0xEF, (byte)0xBB, (byte)0xBF }, html, StandardCharsets.UTF_8),
+			StandardCharsets.UTF_8, html);
+	}
+
+	@Test
+	void metaCharset() throws IOException {
+		String html = "<html><head><meta charset=\"windows-1252\"></head><body><p>caf\u00e9 \u20ac</p></body></html>";
+		assertConverted(html.getBytes(WINDOWS_1252), WINDOWS_1252, html);
+	}
+
+	@Test
+	void httpEquivContentType() throws IOException {
+		String html = "<html><head><!-- <meta charset=utf-16> --><META HTTP-EQUIV='Content-Type' "
+			+ "CONTENT='text/html; charset=ISO-8859-1'></head><body><p>caf\u00e9</p></body></html>";
+		assertConverted(html.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.ISO_8859_1, html);
+	}
+
+	@Test
+	void declarationBeyondPrescanIgnored() throws IOException {
+		String html = "<html><head><title>" + "x".repeat(1024) + "</title><meta charset=windows-1252></head>"
+			+ "<body><p>caf\u00e9</p></body></html>";
+		assertConverted(html.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, html);
+	}
+
+	@Test
+	void declaredUtf16ReadAsUtf8() throws IOException {
+		String html = "<html><head><meta charset=utf-16></head><body><p>caf\u00e9</p></body></html>";
+		assertConverted(html.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, html);
+	}
+
+	@Test
+	void unknownCharsetReadAsUtf8() throws IOException {
+		String html = "<html><head><meta charset=no-such-charset></head><body><p>caf\u00e9</p></body></html>";
+		assertConverted(html.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, html);
+	}
+
+	@Test
+	void charactersAcrossBufferAndWindowBoundaries() throws IOException {
+		// A 3-byte and a 4-byte character take 7 bytes, so the boundaries of the 64 KB buffer fall on every
+		//   byte of them in turn, and so do those of windows of an odd size.
+		String html = "<html><head><title>Large</title></head><body><p>" + "\u20ac\ud83d\ude00".repeat(160 * 1024)
+			+ "</p></body></html>";
+		byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+		assertTrue(bytes.length >= HtmlInput.MAPPING_THRESHOLD);
+		Path file = write(bytes);
+		assertEquals(HtmlToXhtml.convert(html), convert(file, 3 * 64 * 1024 + 1));
+		assertEquals(HtmlToXhtml.convert(html), convert(file, 1024 * 1024 * 1024));
+	}
+
+	private static byte[] bytes(byte[] byteOrderMark, String html, Charset charset) {
+		byte[] document = html.getBytes(charset);
+		byte[] bytes = new byte[byteOrderMark.length + document.length];
+		System.arraycopy(byteOrderMark, 0, bytes, 0, byteOrderMark.length);
+		System.arraycopy(document, 0, bytes, byteOrderMark.length, document.length);
+		return bytes;
+	}
+
+	// Check the charset sniffed from a file, and that the file converts the same as its document.
+	private void assertConverted(byte[] bytes, Charset expectedCharset, String html) throws IOException {
+		Path file = write(bytes);
+		try(HtmlInput input = new HtmlInput(file)) {
+			assertEquals(expectedCharset, input.getCharset());
+		}
+		assertEquals(HtmlToXhtml.convert(html), convert(file, Long.MAX_VALUE));
+	}
+
+	private Path write(byte[] bytes) throws IOException {
+		Path file = Files.createTempFile(directory, "input", ".html");
+		Files.write(file, bytes);
+		return file;
+	}
+
+	// Convert a file, mapping it the given number of bytes at a time if it's large.
+	private static String convert(Path file, long mappingSize) throws IOException {
+		StringWriter xhtml = new StringWriter();
+		try(HtmlInput input = new HtmlInput(file, mappingSize)) {
+			XhtmlConverter converter = new XhtmlConverter(xhtml, input.getCharset());
+			input.feed(converter);
+			converter.finish();
+		}
+		return xhtml.toString();
+	}
+}
@@ -0,0 +1,147 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the conversion of whole documents to the XHTML they're known to convert to, in the golden
+ * directory of the test resources. When the output changes on purpose, write the new output over it.
+ */
+class HtmlToXhtmlTest {
+	@Test
+	void badHtmlTest() throws IOException {
+		assertGolden(Paths.get("../docs/bad_html_test.html"), "bad_html_test");
+	}
+
+	@Test
+	void readmeExample() throws IOException {
+		assertGolden(Paths.get("src/test/resources/golden/readme_example.html"), "readme_example");
+	}
+
+	@Test
+	void readerInTinyReads() throws IOException {
+		StringWriter xhtml = new StringWriter();
+		try(Reader in = new OneCharReader(Files.newBufferedReader(Paths.get("../docs/bad_html_test.html"), StandardCharsets.UTF_8))) {
+			HtmlToXhtml.convert(in, xhtml);
+		}
+		assertEquals(golden("bad_html_test.xhtml"), xhtml.toString());
+	}
+
+	@Test
+	void sameAsString() throws IOException {
+		String html = Files.readString(Paths.get("../docs/bad_html_test.html"), StandardCharsets.UTF_8);
+		assertEquals(golden("bad_html_test.xhtml"), HtmlToXhtml.convert(html));
+	}
+
+	@Test
+	void writesWhileReading() throws IOException {
+		StringWriter xhtml = new StringWriter();
+		ParagraphReader in = new ParagraphReader(10_000, xhtml);
+		ClosingWriter out = new ClosingWriter(xhtml);
+		HtmlToXhtml.convert(in, out);
+		assertTrue(in.writtenHalfway > xhtml.getBuffer().length() / 4, "Too little written halfway through");
+		assertTrue(out.flushed, "Not flushed");
+		assertFalse(out.closed, "Closed");
+	}
+
+	// Convert the document to both outputs, and compare them to the golden files of the given name.
+	private static void assertGolden(Path document, String name) throws IOException {
+		StringWriter xhtml = new StringWriter();
+		StringWriter minimized = new StringWriter();
+		try(Reader in = Files.newBufferedReader(document, StandardCharsets.UTF_8)) {
+			HtmlToXhtml.convert(in, xhtml, minimized);
+		}
+		assertEquals(golden(name + ".xhtml"), xhtml.toString());
+		assertEquals(golden(name + ".min.xhtml"), minimized.toString());
+	}
+
+	// Makes up a document of paragraphs one at a time, and notes how much XHTML there was halfway through.
+	private static class ParagraphReader extends Reader {
+		private final int paragraphs;
+		private final StringWriter xhtml;
+		private final StringBuilder pending = new StringBuilder("<html><body>");
+		private int paragraph = 0;
+		int writtenHalfway = -1;
+
+		ParagraphReader(int paragraphs, StringWriter xhtml) {
+			this.paragraphs = paragraphs;
+			this.xhtml = xhtml;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if(pending.length() == 0) {
+				if(paragraph == paragraphs) {
+					return -1;
+				}
+				if(++paragraph == paragraphs / 2) {
+					writtenHalfway = xhtml.getBuffer().length();
+				}
+				pending.append("<p>Paragraph ").append(paragraph).append("</p>\n");
+			}
+			int count = Math.min(length, pending.length());
+			pending.getChars(0, count, buffer, offset);
+			pending.delete(0, count);
+			return count;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	// Reads a single character at a time, however many are asked for.
+	private static class OneCharReader extends FilterReader {
+		OneCharReader(Reader in) {
+			super(in);
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			return super.read(buffer, offset, Math.min(length, 1));
+		}
+	}
+
+	// Notes whether it's been flushed or closed.
+	private static class ClosingWriter extends FilterWriter {
+		boolean flushed = false;
+		boolean closed = false;
+
+		ClosingWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushed = true;
+			super.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+
+	static String golden(String name) throws IOException {
+		try(InputStream in = HtmlToXhtmlTest.class.getResourceAsStream("/golden/" + name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class HtmlTokenizerTest {
+	@Test
+	void tagsAndText() throws IOException {
+		assertEvents("<html><body><p class=a>Hi <b>there</b></p></body></html>",
+			"start", "tag <p class=a>", "text Hi ", "tag <b>", "text there", "tag </b>", "tag </p>", "end");
+	}
+
+	@Test
+	void tagEndsAtFirstClosingBracket() throws IOException {
+		// Even inside a quoted attribute value, like the old regular expression.
+		assertEvents("<body><a title=\"x>y\">link</a>",
+			"start", "tag <a title=\"x>", "text y\">link", "tag </a>", "end");
+	}
+
+	@Test
+	void whitespaceBeforeName() throws IOException {
+		assertEvents("<body>< p>a< /p>", "start", "tag < p>", "text a", "tag < /p>", "end");
+	}
+
+	@Test
+	void notTags() throws IOException {
+		assertEvents("<body>1 <= 2, <- </ b> <> <<b>x",
+			"start", "text 1 <= 2, <- </ b> <> <", "tag <b>", "text x", "end");
+		// A digit is a word character, so this one is a tag.
+		assertEvents("<body>1 < 2 > 0", "start", "text 1 ", "tag < 2 >", "text  0", "end");
+	}
+
+	@Test
+	void unterminatedTagIsText() throws IOException {
+		assertEvents("<body>a <b title='x", "start", "text a <b title='x", "end");
+	}
+
+	@Test
+	void lineBreaksFolded() throws IOException {
+		assertEvents("<body>a\r\n\n\rb\n<br\n>c", "start", "text a b ", "tag <br >", "text c", "end");
+	}
+
+	@Test
+	void onlyFirstBody() throws IOException {
+		assertEvents("<head><title>x</title></head>before<BODY>in<b>side</b></Body>after<body>again</body>",
+			"start", "text in", "tag <b>", "text side", "tag </b>", "end");
+	}
+
+	@Test
+	void partialClosingBodyIsContent() throws IOException {
+		assertEvents("<body>a</bod>b</body", "start", "text a", "tag </bod>", "text b</body", "end");
+	}
+
+	@Test
+	void noBody() throws IOException {
+		assertEvents("<html><p>no body</p></html>", "end");
+	}
+
+	@Test
+	void emptyListsRemoved() throws IOException {
+		assertEvents("<body>a<ul> </ul>b<ol>\n\t</ol>c< dl class=x>< /dl>d<ul></ol>e",
+			"start", "text abcde", "end");
+		// The list tags are matched in lower case only, like the old regular expression.
+		assertEvents("<body><OL>\n</OL>", "start", "tag <OL>", "text  ", "tag </OL>", "end");
+	}
+
+	@Test
+	void nonEmptyListsKept() throws IOException {
+		assertEvents("<body><ul> x </ul><ol><li>1</li></ol><ul> <li></ul>",
+			"start", "tag <ul>", "text  x ", "tag </ul>", "tag <ol>", "tag <li>", "text 1", "tag </li>", "tag </ol>",
+			"tag <ul>", "text  ", "tag <li>", "tag </ul>", "end");
+	}
+
+	@Test
+	void emptyListTagRunsToClosingBracket() throws IOException {
+		assertEvents("<body><ul <ul></ul>x", "start", "text x", "end");
+		assertEvents("<body><ul></ul <ol>>x", "start", "text >x", "end");
+	}
+
+	@Test
+	void sameEventsForEveryChunkSize() throws IOException {
+		String html = "<html><head><title>t</title></head>\r\n<BODY class=x>\n<p>a &amp; b</p><ul>\n</ul>"
+			+ "<ol><li>1</li></ol>< b>c</ b>1 < 2</bod></body>after";
+		List<String> expected = events(html, html.length());
+		for(int chunkSize = 1; chunkSize < 8; chunkSize++) {
+			assertEquals(expected, events(html, chunkSize), "Chunks of " + chunkSize);
+		}
+	}
+
+	private static void assertEvents(String html, String... expected) throws IOException {
+		assertEquals(Arrays.asList(expected), events(html, html.length()));
+	}
+
+	// Tokenize a document fed in chunks of the given size, and list its events, with the runs of text
+	//   between two other events joined up.
+	private static List<String> events(String html, int chunkSize) throws IOException {
+		List<String> events = new ArrayList<>();
+		StringBuilder text = new StringBuilder();
+		HtmlTokenizer tokenizer = new HtmlTokenizer(new HtmlTokenizer.Handler() {
+			@Override
+			public void startBody() {
+				events.add("start");
+			}
+
+			@Override
+			public void text(CharSequence chars) {
+				text.append(chars);
+			}
+
+			@Override
+			public void tag(String tag, long position) {
+				endText();
+				events.add("tag " + tag);
+			}
+
+			@Override
+			public void end() {
+				endText();
+				events.add("end");
+			}
+
+			private void endText() {
+				if(text.length() > 0) {
+					events.add("text " + text);
+					text.setLength(0);
+				}
+			}
+		});
+		for(int i = 0; i < html.length(); i += chunkSize) {
+			tokenizer.write(html.substring(i, Math.min(html.length(), i + chunkSize)));
+		}
+		tokenizer.end();
+		return events;
+	}
+}
@@ -0,0 +1,96 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ParallelBodyConverterTest {
+	private final CountingPool pool = new CountingPool();
+
+	@AfterEach
+	void shutDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	void largeDocumentInOneChunk() throws IOException {
+		String html = document(8 * ParallelBodyConverter.SEGMENT_SIZE);
+		String expected = convert(html, null, 8192);
+		assertEquals(expected, convert(html, pool, Integer.MAX_VALUE));
+		// Every complete segment of the chunk is cut off and converted on the pool, not just the first one.
+		assertTrue(pool.segments.get() >= 7, pool.segments.get() + " segments");
+	}
+
+	@Test
+	void largeDocumentInSmallChunks() throws IOException {
+		String html = document(4 * ParallelBodyConverter.SEGMENT_SIZE);
+		assertEquals(convert(html, null, Integer.MAX_VALUE), convert(html, pool, 1000));
+		assertTrue(pool.segments.get() >= 3, pool.segments.get() + " segments");
+	}
+
+	@Test
+	void bodyWithoutBoundaries() throws IOException {
+		// One long text, which can't be cut anywhere, so it's tokenized right on the feeding thread.
+		String html = "<html><body><p>" + "x".repeat(2 * ParallelBodyConverter.MAXIMUM_SEGMENT_SIZE)
+			+ "</p><div>after</div></body></html>";
+		assertEquals(convert(html, null, Integer.MAX_VALUE), convert(html, pool, Integer.MAX_VALUE));
+	}
+
+	// A document with a body of about the given size, with tags, references, lists, and misnested elements.
+	private static String document(int size) {
+		StringBuilder html = new StringBuilder("<html><head><title>Large</title></head><body>\n");
+		for(int i = 0; html.length() < size; i++) {
+			html.append("<div class=d").append(i % 7).append("><p>Paragraph ").append(i)
+				.append(" &amp; &copy; <b><i>bold</b></i></p>\n");
+			if(i % 5 == 0) {
+				html.append("<ul><li>one<li>two</ul> <ol> </ol>\n");
+			}
+			// Close the DIVs three at a time, so that some of them are open across segments.
+			if(i % 3 == 2) {
+				html.append("</div></div></div>");
+			}
+		}
+		return html.append("</body></html>").toString();
+	}
+
+	// Convert a document fed in chunks of the given size, in parallel on the given pool unless it's null.
+	private static String convert(String html, ForkJoinPool pool, int chunkSize) throws IOException {
+		StringWriter xhtml = new StringWriter();
+		XhtmlConverter converter = new XhtmlConverter(xhtml);
+		if(pool != null) {
+			converter.setParallelPool(pool);
+		}
+		char[] chars = html.toCharArray();
+		for(int i = 0; i < chars.length; ) {
+			int length = Math.min(chunkSize, chars.length - i);
+			converter.feed(chars, i, length);
+			i += length;
+		}
+		converter.finish();
+		return xhtml.toString();
+	}
+
+	// A pool that counts the segments submitted to it.
+	private static class CountingPool extends ForkJoinPool {
+		final AtomicInteger segments = new AtomicInteger();
+
+		CountingPool() {
+			super(4);
+		}
+
+		@Override
+		public <T> ForkJoinTask<T> submit(Callable<T> task) {
+			segments.incrementAndGet();
+			return super.submit(task);
+		}
+	}
+}
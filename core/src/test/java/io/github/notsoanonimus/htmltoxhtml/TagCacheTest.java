@@ -0,0 +1,139 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+class TagCacheTest {
+	private static final NormalizedTag P = new NormalizedTag("<p>", "p", false, false, false);
+
+	@Test
+	void sameOutputWithCache() throws IOException {
+		StringBuilder template = new StringBuilder("<html><head><title>Template</title></head><body>");
+		for(int i = 0; i < 500; i++) {
+			template.append("<div class=row><p ALIGN=left class=c").append(i % 20).append(">Row &nbsp;").append(i)
+				.append("<br><input type=checkbox checked></p></div>\n");
+		}
+		template.append("<p title='").append("x".repeat(TagCache.MAXIMUM_TAG_LENGTH)).append("'>Long</p></body></html>");
+		String[] documents = {
+			Files.readString(Paths.get("../docs/bad_html_test.html"), StandardCharsets.UTF_8),
+			Files.readString(Paths.get("src/test/resources/golden/readme_example.html"), StandardCharsets.UTF_8),
+			template.toString()
+		};
+		for(String html : documents) {
+			String expected = convert(html, new TagRules());
+			// Large enough for every tag, and so small that tags are evicted all the time.
+			for(int cacheSize : new int[] { 10000, 4 }) {
+				TagRules rules = new TagRules();
+				rules.setCacheSize(cacheSize);
+				assertEquals(expected, convert(html, rules), "Cache of " + cacheSize);
+				// Again, with the cache filled by the first time.
+				assertEquals(expected, convert(html, rules), "Cache of " + cacheSize + ", filled");
+			}
+		}
+	}
+
+	@Test
+	void leastRecentlyUsedEvicted() {
+		TagCache cache = new TagCache(3, 1);
+		cache.put("<a>", P);
+		cache.put("<b>", P);
+		cache.put("<c>", P);
+		cache.get("<a>");
+		cache.put("<d>", P);
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.get("<b>"));
+		assertSame(P, cache.get("<a>"));
+		assertSame(P, cache.get("<c>"));
+		assertSame(P, cache.get("<d>"));
+	}
+
+	@Test
+	void sizeSpreadOverSegments() {
+		TagCache cache = new TagCache(20);
+		for(int i = 0; i < 1000; i++) {
+			cache.put("<p id=" + i + ">", P);
+		}
+		assertEquals(20, cache.size());
+		assertEquals(980, cache.getEvictions());
+	}
+
+	@Test
+	void counters() {
+		TagCache cache = new TagCache(10);
+		assertNull(cache.get("<a>"));
+		cache.put("<a>", P);
+		assertNotNull(cache.get("<a>"));
+		assertNotNull(cache.get("<a>"));
+		assertNull(cache.get("<b>"));
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0.5, cache.getHitRate());
+		// Clearing the cache keeps the statistics.
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	void conversionCountsHitsAndMisses() throws IOException {
+		TagRules rules = new TagRules();
+		rules.setCacheSize(100);
+		convert("<html><body><p>a</p><p>b</p><p>c</p></body></html>", rules);
+		// The BODY tags start and end the body, so the cache only sees the P tags.
+		assertEquals(2, rules.getCache().getMisses());
+		assertEquals(4, rules.getCache().getHits());
+	}
+
+	@Test
+	void longTagsNotCached() throws IOException {
+		TagRules rules = new TagRules();
+		rules.setCacheSize(100);
+		String longTag = "<p title=\"" + "x".repeat(TagCache.MAXIMUM_TAG_LENGTH) + "\">";
+		convert("<html><body>" + longTag + "a</p>" + longTag + "b</p></body></html>", rules);
+		assertNull(rules.getCache().get(longTag));
+		rules.getCache().put(longTag, P);
+		assertNull(rules.getCache().get(longTag));
+	}
+
+	@Test
+	void changingRulesClearsCache() throws IOException {
+		TagRules rules = new TagRules();
+		rules.setCacheSize(100);
+		String html = "<html><body><p title=\"&nbsp;\">a</p></body></html>";
+		convert(html, rules);
+		assertEquals(2, rules.getCache().size());
+		rules.setEntityOutput(TagRules.EntityOutput.NUMERIC);
+		assertEquals(0, rules.getCache().size());
+		assertEquals(convert(html, numericRules()), convert(html, rules));
+		rules.addAttributeRule("title", (tag, value) -> { });
+		assertEquals(0, rules.getCache().size());
+		convert(html, rules);
+		rules.addSelfClosingElement("spacer");
+		assertEquals(0, rules.getCache().size());
+	}
+
+	private static TagRules numericRules() {
+		TagRules rules = new TagRules();
+		rules.setEntityOutput(TagRules.EntityOutput.NUMERIC);
+		return rules;
+	}
+
+	private static String convert(String html, TagRules rules) throws IOException {
+		StringWriter xhtml = new StringWriter();
+		XhtmlConverter converter = new XhtmlConverter(xhtml, StandardCharsets.UTF_8, rules);
+		converter.feed(html.toCharArray());
+		converter.finish();
+		return xhtml.toString();
+	}
+}
@@ -0,0 +1,113 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TagRulesTest {
+	private final TagRules rules = new TagRules();
+
+	@Test
+	void namesLowerCased() {
+		assertXhtml("<P CLASS=x>", "<p class=\"x\">");
+		assertXhtml("</DIV>", "</div>");
+	}
+
+	@Test
+	void quotedValuesKeepTheirQuotes() {
+		assertXhtml("<p id=\"y\" title='z'>", "<p id=\"y\" title='z'>");
+		assertXhtml("< div  class = \"a\" >", "<div class=\"a\">");
+	}
+
+	@Test
+	void unquotedValuesQuoted() {
+		assertXhtml("<p class=x data-id=1 xml:lang=en>", "<p class=\"x\" data-id=\"1\" xml:lang=\"en\">");
+		// An unquoted value runs to the next whitespace, slash and all.
+		assertXhtml("<img src=a.png/>", "<img src=\"a.png/\" />");
+	}
+
+	@Test
+	void quotesInsideValues() {
+		assertXhtml("<a title=\"say 'hi'\" alt='a \"b\"'>", "<a title=\"say 'hi'\" alt='a \"b\"'>");
+	}
+
+	@Test
+	void unterminatedValueRunsToEndOfTag() {
+		assertXhtml("<p title=\"unterminated>", "<p title=\"unterminated\">");
+	}
+
+	@Test
+	void minimizedAttributesExpanded() {
+		assertXhtml("<input type=checkbox checked disabled>",
+			"<input type=\"checkbox\" checked=\"checked\" disabled=\"disabled\" />");
+	}
+
+	@Test
+	void unknownMinimizedAttributesDropped() {
+		assertXhtml("<p hidden class=a>", "<p class=\"a\">");
+		assertXhtml("<div bgcolor>", "<div>");
+	}
+
+	@Test
+	void namespacePrefixStripped() {
+		NormalizedTag tag = normalize("</O:P>");
+		assertEquals("</p>", tag.xhtml);
+		assertEquals("p", tag.element);
+		assertTrue(tag.closing);
+	}
+
+	@Test
+	void stylesMerged() {
+		NormalizedTag tag = normalize("<td bgcolor=red style=\"color:blue\">");
+		assertEquals("<td style=\"background-color:red;color:blue;\">", tag.xhtml);
+		assertTrue(tag.mergedStyle);
+		assertFalse(normalize("<td style=\"color:blue\">").mergedStyle);
+		assertXhtml("<td style=\"\">", "<td>");
+	}
+
+	@Test
+	void selfClosingElements() {
+		assertTrue(normalize("<br>").selfClosing);
+		assertXhtml("<br>", "<br />");
+		assertXhtml("<br/>", "<br />");
+		// Only opening tags are closed.
+		assertFalse(normalize("</br>").selfClosing);
+		assertFalse(normalize("<p>").selfClosing);
+	}
+
+	@Test
+	void referencesInValues() {
+		assertXhtml("<p title=\"x &amp; &nbsp;y\">", "<p title=\"x &amp; \u00a0y\">");
+		rules.setEntityOutput(TagRules.EntityOutput.NUMERIC);
+		assertXhtml("<p title=\"x &amp; &nbsp;y\">", "<p title=\"x &amp; &#160;y\">");
+	}
+
+	@Test
+	void tagsWithoutNameInvalid() {
+		assertSame(NormalizedTag.INVALID, normalize("< >"));
+		assertSame(NormalizedTag.INVALID, normalize("</ >"));
+	}
+
+	@Test
+	void customRules() {
+		rules.addAttributeRule("align", (tag, value) -> tag.addStyle("text-align:" + value));
+		rules.addAttributeRule("font", "color", (tag, value) -> tag.addStyle("color:" + value));
+		rules.addSelfClosingElement("spacer");
+		assertXhtml("<p ALIGN=center>", "<p style=\"text-align:center;\">");
+		assertXhtml("<font color=red>", "<font style=\"color:red;\">");
+		// The rule for the one element doesn't apply to others.
+		assertXhtml("<p color=red>", "<p color=\"red\">");
+		assertXhtml("<spacer>", "<spacer />");
+	}
+
+	private NormalizedTag normalize(String rawTag) {
+		return rules.normalize(rawTag, new XhtmlTag(Trace.OFF));
+	}
+
+	private void assertXhtml(String rawTag, String expected) {
+		assertEquals(expected, normalize(rawTag).xhtml, rawTag);
+	}
+}
@@ -0,0 +1,133 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+class TraceTest {
+	private static final String DOCUMENT = "<html><body><div class=a><p class=b>x<br>y</div>"
+		+ "<li>z</li></span><p class=b>w</p></body></html>";
+
+	private final List<Trace.Event> events = new CopyOnWriteArrayList<>();
+	private final Trace trace = new Trace(events::add);
+
+	@Test
+	void levelsParsed() {
+		Trace all = trace.withLevels("all");
+		for(Trace.Phase phase : Trace.Phase.values()) {
+			assertTrue(all.isEnabled(phase, Trace.Level.BASIC), phase.name());
+			assertFalse(all.isEnabled(phase, Trace.Level.DETAIL), phase.name());
+		}
+		assertTrue(trace.withLevels("ALL=detail").isEnabled(Trace.Phase.TOKENIZER, Trace.Level.DETAIL));
+
+		// A bare phase is traced at BASIC, and the others stay OFF.
+		Trace sanitizer = trace.withLevels(" sanitizer ");
+		assertTrue(sanitizer.isEnabled(Trace.Phase.SANITIZER, Trace.Level.BASIC));
+		assertFalse(sanitizer.isEnabled(Trace.Phase.SANITIZER, Trace.Level.DETAIL));
+		assertFalse(sanitizer.isEnabled(Trace.Phase.NESTING, Trace.Level.BASIC));
+
+		Trace mixed = trace.withLevels("nesting=detail,,tokenizer, all=off ,sanitizer=basic");
+		assertFalse(mixed.isEnabled(Trace.Phase.NESTING, Trace.Level.BASIC));
+		assertFalse(mixed.isEnabled(Trace.Phase.TOKENIZER, Trace.Level.BASIC));
+		assertTrue(mixed.isEnabled(Trace.Phase.SANITIZER, Trace.Level.BASIC));
+		// OFF is never enabled, whatever the level of the phase.
+		assertFalse(mixed.isEnabled(Trace.Phase.SANITIZER, Trace.Level.OFF));
+	}
+
+	@Test
+	void unknownNamesRejected() {
+		IllegalArgumentException phase = assertThrows(IllegalArgumentException.class, () -> trace.withLevels("parser"));
+		assertEquals("Unknown trace phase 'parser'; expected one of [tokenizer, sanitizer, nesting].", phase.getMessage());
+		IllegalArgumentException level = assertThrows(IllegalArgumentException.class, () -> trace.withLevels("nesting=verbose"));
+		assertEquals("Unknown trace level 'verbose'; expected one of [off, basic, detail].", level.getMessage());
+	}
+
+	@Test
+	void offTraceCantBeEnabled() {
+		assertThrows(IllegalStateException.class, () -> Trace.OFF.withLevel(Trace.Phase.NESTING, Trace.Level.BASIC));
+		assertThrows(IllegalStateException.class, () -> Trace.OFF.withLevels("all"));
+		assertFalse(Trace.OFF.withLevel(Trace.Phase.NESTING, Trace.Level.OFF).isEnabled());
+		assertSame(Trace.OFF, Trace.OFF.forDocument("a.html"));
+	}
+
+	@Test
+	void eventsEscapedInJson() {
+		Trace.Event event = new Trace.Event(Trace.Phase.SANITIZER, "say \"hi\"", "C:\\docs\\a.html", 12,
+			new Object[] { "value", "a\nb\t\u0001\"\\", "count", 3, "closing", true, "tag", null });
+		assertEquals("{\"phase\":\"sanitizer\",\"event\":\"say \\\"hi\\\"\",\"document\":\"C:\\\\docs\\\\a.html\",\"position\":12,"
+			+ "\"value\":\"a\\u000ab\\u0009\\u0001\\\"\\\\\",\"count\":3,\"closing\":true,\"tag\":\"null\"}", event.toJson());
+		// Without a document or a position.
+		assertEquals("{\"phase\":\"nesting\",\"event\":\"e\"}",
+			new Trace.Event(Trace.Phase.NESTING, "e", null, -1, new Object[0]).toJson());
+	}
+
+	@Test
+	void disabledPhasesNeverTraced() throws IOException {
+		Trace failing = new Trace(event -> {
+			throw new AssertionError("Traced " + event);
+		});
+		convert(DOCUMENT, new TagRules(), failing);
+		convert(DOCUMENT, new TagRules(), Trace.OFF);
+		Trace.OFF.event(Trace.Phase.NESTING, Trace.Level.BASIC, "event", 0);
+
+		convert(DOCUMENT, new TagRules(), trace.withLevel(Trace.Phase.NESTING, Trace.Level.BASIC).forDocument("doc"));
+		assertFalse(events.isEmpty());
+		for(Trace.Event event : events) {
+			assertEquals(Trace.Phase.NESTING, event.getPhase(), event.toJson());
+			assertEquals("doc", event.getDocument());
+		}
+	}
+
+	@Test
+	void detailedSanitizerTracingSkipsCache() throws IOException {
+		TagRules rules = new TagRules();
+		rules.setCacheSize(100);
+		convert(DOCUMENT, rules, trace.withLevel(Trace.Phase.SANITIZER, Trace.Level.DETAIL));
+		assertEquals(0, rules.getCache().getHits() + rules.getCache().getMisses());
+		assertEquals(0, rules.getCache().size());
+		// The attributes of the repeated tag are traced every time.
+		assertEquals(2, events.stream().filter(event -> event.getName().equals("attribute") && "b".equals(event.get("value"))).count());
+
+		convert(DOCUMENT, rules, trace.withLevel(Trace.Phase.SANITIZER, Trace.Level.BASIC));
+		assertTrue(rules.getCache().getHits() > 0);
+	}
+
+	@Test
+	void parallelPoolIgnoredWhileTracing() throws IOException {
+		StringBuilder html = new StringBuilder("<html><body>");
+		while(html.length() < 4 * ParallelBodyConverter.SEGMENT_SIZE) {
+			html.append("<div><p class=a>Paragraph</p></div>\n");
+		}
+		String document = html.append("</body></html>").toString();
+		// A pool that can't run anything, so using it would fail.
+		ForkJoinPool pool = new ForkJoinPool(2);
+		pool.shutdown();
+		assertThrows(RejectedExecutionException.class, () -> convert(document, new TagRules(), Trace.OFF, pool));
+		convert(document, new TagRules(), trace.withLevel(Trace.Phase.NESTING, Trace.Level.BASIC), pool);
+	}
+
+	private static void convert(String html, TagRules rules, Trace trace) throws IOException {
+		convert(html, rules, trace, null);
+	}
+
+	private static void convert(String html, TagRules rules, Trace trace, ForkJoinPool pool) throws IOException {
+		XhtmlConverter converter = new XhtmlConverter(Writer.nullWriter(), StandardCharsets.UTF_8, rules, trace);
+		if(pool != null) {
+			converter.setParallelPool(pool);
+		}
+		converter.feed(html.toCharArray());
+		converter.finish();
+	}
+}
@@ -0,0 +1,88 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks how the BODY is repaired, on the minimized XHTML, which leaves out the indentation.
+ */
+class XhtmlBodyWriterTest {
+	@Test
+	void orphanedListItemsGetList() throws IOException {
+		assertBody("<li>a</li>", "<ul><li>a</li></ul>");
+		assertCount("<li>a</li>", ConversionMetrics.Counter.INSERTED_LISTS, 1);
+	}
+
+	@Test
+	void elementsInListGetListItem() throws IOException {
+		assertBody("<ul><p>x</p></ul>", "<ul><li><p>x</p></li></ul>");
+		assertCount("<ul><p>x</p></ul>", ConversionMetrics.Counter.INSERTED_LIST_ITEMS, 1);
+	}
+
+	@Test
+	void textInListGetsListItem() throws IOException {
+		assertBody("<ul>text</ul>", "<ul><li>text</li></ul>");
+		assertBody("<ol><li>1</li>two<li>3</li></ol>", "<ol><li>1</li><li>two</li><li>3</li></ol>");
+	}
+
+	@Test
+	void emptyListsRemoved() throws IOException {
+		assertBody("a<ul> </ul>b<ol>\n</ol>c", "abc");
+	}
+
+	@Test
+	void misnestedElementsClosedInOrder() throws IOException {
+		assertBody("<div><b><i>x</div>", "<div><b><i>x</i></b></div>");
+		assertCount("<div><b><i>x</div>", ConversionMetrics.Counter.CASCADED_CLOSES, 2);
+	}
+
+	@Test
+	void strayClosingTagsDropped() throws IOException {
+		assertBody("<p>a<b>b</b></span></p>", "<p>a<b>b</b></p>");
+		assertBody("<b><i>x</b></i>", "<b><i>x</i></b>");
+		assertCount("<p>a<b>b</b></span></p>", ConversionMetrics.Counter.DROPPED_CLOSING_TAGS, 1);
+	}
+
+	@Test
+	void innermostOfSameElementClosed() throws IOException {
+		assertBody("<div><div>x</div>y</div>", "<div><div>x</div>y</div>");
+	}
+
+	@Test
+	void unclosedElementsClosedAtEnd() throws IOException {
+		assertBody("<div><p>x", "<div><p>x</p></div>");
+		assertCount("<div><p>x", ConversionMetrics.Counter.UNCLOSED_ELEMENTS, 2);
+	}
+
+	@Test
+	void lineBreaksSelfClosed() throws IOException {
+		assertBody("a<br>b", "a&#160;<br />b");
+	}
+
+	private static void assertBody(String body, String expected) throws IOException {
+		String xhtml = minimized("<html><body>" + body + "</body></html>");
+		assertEquals(expected, xhtml.substring(xhtml.indexOf("<body>") + 6, xhtml.lastIndexOf("</body>")), body);
+	}
+
+	private static void assertCount(String body, ConversionMetrics.Counter counter, long expected) throws IOException {
+		XhtmlConverter converter = new XhtmlConverter(Writer.nullWriter());
+		converter.feed(("<html><body>" + body + "</body></html>").toCharArray());
+		converter.finish();
+		assertEquals(expected, converter.getMetrics().get(counter), body);
+	}
+
+	private static String minimized(String html) throws IOException {
+		StringWriter minimized = new StringWriter();
+		XhtmlConverter converter = new XhtmlConverter(Writer.nullWriter(), minimized, StandardCharsets.UTF_8,
+			XhtmlConverter.DEFAULT_RULES, Trace.OFF);
+		converter.feed(html.toCharArray());
+		converter.finish();
+		return minimized.toString();
+	}
+}
@@ -0,0 +1,102 @@
+package io.github.notsoanonimus.htmltoxhtml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+class XhtmlConverterTest {
+	// The chunk sizes every document is fed in; the last one is the whole document at once.
+	private static final int[] CHUNK_SIZES = { 1, 2, 3, 7, 64, 4096, Integer.MAX_VALUE };
+
+	@Test
+	void sameOutputForEveryChunkSize() throws IOException {
+		assertSameForEveryChunkSize(Files.readString(Paths.get("../docs/bad_html_test.html"), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void headWithoutEnd() throws IOException {
+		assertSameForEveryChunkSize("<html><head><title>Open</title><meta charset=utf-8>\n<body>\n<p>One</p>"
+			+ "<ul><li>Two</li></ul><p>Three &amp; four</p></body></html>");
+	}
+
+	@Test
+	void bodyBeforeEndOfHead() throws IOException {
+		assertSameForEveryChunkSize("<html><head><title>Early</title><body><p>One <b>two</b></p></head>"
+			+ "<div>three</div></body></html>");
+	}
+
+	@Test
+	void bodyStartedByHeldBackList() throws IOException {
+		// The '>' of the BODY tag is held back with the list, so the body only starts after it.
+		assertSameForEveryChunkSize("<head><title>List</title><ul<body> <p>One</p><ul> </ul><p>Two</p></body>");
+	}
+
+	@Test
+	void headEndsWhereBodyStarts() throws IOException {
+		String xhtml = convert("<head><title>T</title><body><p>Body</p></body>", Integer.MAX_VALUE);
+		String head = xhtml.substring(0, xhtml.indexOf("\n</head>"));
+		assertEquals(-1, head.indexOf("Body"), head);
+	}
+
+	@Test
+	void headTagsSanitized() throws IOException {
+		assertHead("<META NAME=a content=b>\n <LINK REL=stylesheet HREF='s.css'/><TITLE>T</TITLE>",
+			"<meta name=\"a\" content=\"b\" />\n<link rel=\"stylesheet\" href='s.css' /><title>T</title>");
+		// A '<' that doesn't start a tag is left alone.
+		assertHead("<title>a<=b</ ></title>", "<title>a<=b</ ></title>");
+	}
+
+	@Test
+	void scriptsInHeadKeptAsTheyAre() throws IOException {
+		assertHead("<title>T</title><SCRIPT>if(a<b && c>d) x();</SCRIPT><style>p>b{x:<y>}</style>",
+			"<title>T</title><script>if(a<b && c>d) x();</script><style>p>b{x:<y>}</style>");
+	}
+
+	@Test
+	void charsetDeclarationsDropped() throws IOException {
+		// The output is UTF-8, whatever the input declared.
+		assertHead("<meta charset=utf-8>\n<META HTTP-EQUIV=\"Content-Type\" CONTENT=\"text/html; charset=windows-1252\">"
+			+ "\n<meta name=a content=\"charset=x\">\n<title>T</title>", "<meta name=\"a\" content=\"charset=x\" />\n<title>T</title>");
+	}
+
+	@Test
+	void defaultTitleOnlyWithoutTitle() throws IOException {
+		assertHead("<title lang=en>T</title>", "<title lang=\"en\">T</title>");
+		assertHead("<meta name=a content=b>",
+			"<meta name=\"a\" content=\"b\" /><title>File Converted by HTML-to-XHTML Java Conversion Tool</title>");
+	}
+
+	// Check the content a document's HEAD is written with.
+	private static void assertHead(String head, String expected) throws IOException {
+		String xhtml = convert("<html><head>" + head + "</head><body><p>x</p></body></html>", Integer.MAX_VALUE);
+		int start = xhtml.indexOf("<head>\n") + 7;
+		assertEquals(expected, xhtml.substring(start, xhtml.indexOf("\n</head>")), head);
+	}
+
+	private static void assertSameForEveryChunkSize(String html) throws IOException {
+		String expected = convert(html, CHUNK_SIZES[0]);
+		for(int chunkSize : CHUNK_SIZES) {
+			assertEquals(expected, convert(html, chunkSize), "Fed in chunks of " + chunkSize);
+		}
+	}
+
+	// Convert a document fed in chunks of the given size.
+	static String convert(String html, int chunkSize) throws IOException {
+		StringWriter xhtml = new StringWriter();
+		XhtmlConverter converter = new XhtmlConverter(xhtml);
+		char[] chars = html.toCharArray();
+		for(int i = 0; i < chars.length; ) {
+			int length = Math.min(chunkSize, chars.length - i);
+			converter.feed(chars, i, length);
+			i += length;
+		}
+		converter.finish();
+		return xhtml.toString();
+	}
+}